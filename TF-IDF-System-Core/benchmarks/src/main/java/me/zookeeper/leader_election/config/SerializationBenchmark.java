@@ -0,0 +1,105 @@
+package me.zookeeper.leader_election.config;
+
+import Document_and_Data.Document;
+import Document_and_Data.DocumentScoreInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding one shard's hits, as a worker answers the leader:
+ * the compact {@code application/x-tfidf-hits} format against JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final Type HITS = new ParameterizedTypeReference<List<DocumentScoreInfo>>() {}.getType();
+    private static final TypeReference<List<DocumentScoreInfo>> JSON_HITS = new TypeReference<>() {};
+
+    @Param({"10", "100", "1000"})
+    public int k;
+
+    private final BinaryHitsHttpMessageConverter converter = new BinaryHitsHttpMessageConverter();
+    private final ObjectMapper json = new ObjectMapper();
+    private List<DocumentScoreInfo> hits;
+    private byte[] binaryBytes;
+    private byte[] jsonBytes;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        hits = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            hits.add(new DocumentScoreInfo(new Document("synthetic/" + (i % 7) + "/" + (1_000_000 + i) + ".txt"), 12.5 - i * 0.01));
+        }
+        binaryBytes = writeBinary();
+        jsonBytes = writeJson();
+    }
+
+    @Benchmark
+    public byte[] writeBinary() throws IOException {
+        Output message = new Output();
+        converter.write(hits, HITS, BinaryHitsHttpMessageConverter.MEDIA_TYPE, message);
+        return message.out.toByteArray();
+    }
+
+    @Benchmark
+    public List<DocumentScoreInfo> readBinary() throws IOException {
+        return converter.read(HITS, null, new Input(binaryBytes));
+    }
+
+    @Benchmark
+    public byte[] writeJson() throws IOException {
+        return json.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public List<DocumentScoreInfo> readJson() throws IOException {
+        return json.readValue(jsonBytes, JSON_HITS);
+    }
+
+    private static final class Output implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        @Override
+        public OutputStream getBody() {
+            return out;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private record Input(byte[] bytes) implements HttpInputMessage {
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+    }
+}
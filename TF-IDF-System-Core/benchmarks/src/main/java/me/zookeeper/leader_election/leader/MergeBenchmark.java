@@ -0,0 +1,59 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.Document;
+import Document_and_Data.DocumentScoreInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The leader's merge of per-shard answers into one page (TopKMerger, as in
+ * {@code Leader.start}): every shard returns its best {@code k}, highest
+ * score first, and 5% of the hits are documents another shard reported too
+ * (replicas mid-rebalance), which the merge must keep once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+
+    @Param({"2", "8", "32", "128"})
+    public int shards;
+
+    @Param({"10", "100", "1000"})
+    public int k;
+
+    private List<List<DocumentScoreInfo>> shardHits;
+
+    @Setup(Level.Trial)
+    public void start() {
+        SplittableRandom random = new SplittableRandom(7);
+        shardHits = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            List<DocumentScoreInfo> hits = new ArrayList<>(k);
+            double score = 10 + random.nextDouble();
+            for (int i = 0; i < k; i++) {
+                score -= random.nextDouble() * 10.0 / k;
+                int shard = random.nextInt(20) == 0 ? random.nextInt(shards) : s;
+                String name = "shard" + shard + "/doc" + (shard == s ? i : random.nextInt(k)) + ".txt";
+                hits.add(new DocumentScoreInfo(new Document(name), score));
+            }
+            shardHits.add(hits);
+        }
+    }
+
+    @Benchmark
+    public List<DocumentScoreInfo> merge() {
+        TopKMerger merger = new TopKMerger(k, 0);
+        for (List<DocumentScoreInfo> hits : shardHits) {
+            merger.addAll(hits);
+        }
+        return merger.page();
+    }
+}
@@ -0,0 +1,75 @@
+package me.zookeeper.leader_election.worker;
+
+import Document_and_Data.BulkUploadSummary;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Documents per second through {@code /worker/upload-batch}: file written,
+ * text extracted, Worker.addDocToIndex on the ingest pool, and the wait for
+ * the batch to be searchable (refresh) or fsynced (commit).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class IndexingBenchmark {
+
+    private static final int BATCH = 500;
+
+    @Param({"refresh", "commit"})
+    public String durability;
+
+    private Path index;
+    private WorkerFixture fixture;
+    private long next;
+    private byte[] batch;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        index = Files.createTempDirectory("bench-index");
+        fixture = new WorkerFixture(index, Map.of("ingest.catch-up-on-start", false));
+    }
+
+    // zipped outside the measurement, as the leader would have sent it
+    @Setup(Level.Invocation)
+    public void nextBatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < BATCH; i++, next++) {
+                zip.putNextEntry(new ZipEntry(SyntheticCorpus.path(next)));
+                zip.write(SyntheticCorpus.text(next).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        batch = bytes.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public BulkUploadSummary uploadBatch() {
+        BulkUploadSummary summary = fixture.worker.uploadBatch(new ByteArrayInputStream(batch), durability).getBody();
+        if (summary == null || summary.getFailed() > 0) {
+            throw new IllegalStateException("Batch failed: " + summary);
+        }
+        return summary;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        fixture.close();
+        WorkerFixture.delete(index);
+    }
+}
@@ -0,0 +1,68 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.FSDirectory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the near-real-time reopen the worker's refresh thread does: a new
+ * searcher over a synthetic corpus after {@code updates} documents were
+ * re-indexed. The updates are made outside the measurement; the corpus is
+ * left as it was (the writer is rolled back).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReopenBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public long docs;
+
+    @Param({"1", "100", "1000"})
+    public int updates;
+
+    private FSDirectory dir;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private AnalysisChain analysis;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        dir = FSDirectory.open(SyntheticCorpus.index(docs));
+        analysis = SyntheticCorpus.defaultAnalysis();
+        writer = new IndexWriter(dir, new IndexWriterConfig(analysis.indexAnalyzer()));
+        searcherManager = new SearcherManager(writer, null);
+    }
+
+    @Setup(Level.Invocation)
+    public void update() throws IOException {
+        for (int i = 0; i < updates; i++) {
+            long doc = random.nextLong(docs);
+            writer.updateDocument(new Term(DocumentManifest.PATH, SyntheticCorpus.path(doc)), SyntheticCorpus.document(doc, analysis));
+        }
+    }
+
+    @Benchmark
+    public boolean reopen() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+        return searcherManager.isSearcherCurrent();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        searcherManager.close();
+        writer.rollback();
+        dir.close();
+    }
+}
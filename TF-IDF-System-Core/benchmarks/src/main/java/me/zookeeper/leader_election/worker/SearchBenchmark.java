@@ -0,0 +1,104 @@
+package me.zookeeper.leader_election.worker;
+
+import Document_and_Data.DocumentScoreInfo;
+import Document_and_Data.SearchRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one shard answering {@code /worker/process}: query parsing, the
+ * per-segment top-k search and loading the hits' paths, over a synthetic
+ * corpus. Query shapes, by the Zipf rank of their words:
+ * <ul>
+ *   <li>{@code rare} / {@code common} — one word of rank 20k+ / below 64;</li>
+ *   <li>{@code or2} / {@code or4} — two / four words of rank 100 to 5000;</li>
+ *   <li>{@code mixed8} — two common, four middle and two rare words.</li>
+ * </ul>
+ * Each invocation runs the next of 64 queries of the shape. The per-segment
+ * top-k cache is off by default ({@code leafCacheHits=0}); with it on, every
+ * query after the first 64 is served from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"10000", "1000000", "10000000"})
+    public long docs;
+
+    @Param({"rare", "common", "or2", "or4", "mixed8"})
+    public String shape;
+
+    @Param({"10", "100"})
+    public int k;
+
+    @Param({"bm25"})
+    public String similarity;
+
+    @Param({"0"})
+    public long leafCacheHits;
+
+    private WorkerFixture fixture;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        fixture = new WorkerFixture(SyntheticCorpus.index(docs), Map.of(
+                "ingest.catch-up-on-start", false,
+                "search.similarity", similarity,
+                "search.cache.leaf-topk-max-hits", leafCacheHits));
+        queries = queries(shape);
+    }
+
+    @Benchmark
+    public List<DocumentScoreInfo> search() {
+        next = (next + 1) % QUERIES;
+        List<DocumentScoreInfo> hits = fixture.worker.processSearchRequest(new SearchRequest(queries[next], k, null)).getBody();
+        // a rare word may be in no document of a small corpus; an error would come back as a null body
+        if (hits == null) {
+            throw new IllegalStateException("Search failed for " + queries[next]);
+        }
+        return hits;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        fixture.close();
+    }
+
+    static String[] queries(String shape) {
+        SplittableRandom random = new SplittableRandom(shape.hashCode());
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = switch (shape) {
+                case "rare" -> words(random, 1, 20_000, 100_000);
+                case "common" -> words(random, 1, 0, 64);
+                case "or2" -> words(random, 2, 100, 5000);
+                case "or4" -> words(random, 4, 100, 5000);
+                case "mixed8" -> words(random, 2, 0, 64) + " " + words(random, 4, 100, 5000)
+                        + " " + words(random, 2, 20_000, 100_000);
+                default -> throw new IllegalArgumentException("Unknown query shape " + shape);
+            };
+        }
+        return queries;
+    }
+
+    private static String words(SplittableRandom random, int n, int fromRank, int toRank) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(SyntheticCorpus.word(random.nextInt(fromRank, toRank)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Deterministic synthetic documents: words drawn from a Zipf distribution over
+ * a fixed vocabulary, 50 to 300 words each, document {@code i} always the same.
+ * {@link #index(long)} builds an index of the first N of them in the worker's
+ * layout (same analysis chain, fields and commit data, so a Worker opens it
+ * as its own) and keeps it under {@code -Dbench.corpus.dir} (default
+ * {@code target/corpus}) for the next run: 10M documents take a while.
+ */
+public final class SyntheticCorpus {
+
+    private static final Logger log = LoggerFactory.getLogger(SyntheticCorpus.class);
+
+    public static final int VOCABULARY = 100_000;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final String COMPLETE = "corpus.complete";
+
+    // cumulative probability of every rank
+    private static final double[] CDF = new double[VOCABULARY];
+
+    static {
+        double sum = 0;
+        for (int r = 0; r < VOCABULARY; r++) {
+            sum += 1.0 / Math.pow(r + 1, ZIPF_EXPONENT);
+            CDF[r] = sum;
+        }
+        for (int r = 0; r < VOCABULARY; r++) {
+            CDF[r] /= sum;
+        }
+    }
+
+    private SyntheticCorpus() {}
+
+    /** The word of a vocabulary rank (0 is the most frequent): letters only, so every analyzer keeps it whole. */
+    public static String word(int rank) {
+        StringBuilder sb = new StringBuilder();
+        int n = rank + 1;
+        while (n > 0) {
+            sb.append((char) ('a' + (n - 1) % 26));
+            n = (n - 1) / 26;
+        }
+        return sb.append('q').toString();
+    }
+
+    public static String path(long doc) {
+        return "synthetic/" + (doc / 10_000) + "/" + doc + ".txt";
+    }
+
+    public static String text(long doc) {
+        SplittableRandom random = new SplittableRandom(doc * 0x9E3779B97F4A7C15L);
+        int words = 50 + random.nextInt(251);
+        StringBuilder sb = new StringBuilder(words * 6);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(word(rank(random.nextDouble())));
+        }
+        return sb.toString();
+    }
+
+    private static int rank(double p) {
+        int i = Arrays.binarySearch(CDF, p);
+        return Math.min(VOCABULARY - 1, i >= 0 ? i : -i - 1);
+    }
+
+    /** Document {@code doc} as Worker.addDocToIndex builds it, with made-up manifest values. */
+    static org.apache.lucene.document.Document document(long doc, AnalysisChain analysis) {
+        String text = text(doc);
+        org.apache.lucene.document.Document ldoc = new org.apache.lucene.document.Document();
+        DocumentManifest.addPath(ldoc, path(doc));
+        ldoc.add(new Field("contents", text, analysis.contentsType()));
+        ldoc.add(new NumericDocValuesField(DocumentManifest.SIZE, text.length()));
+        ldoc.add(new NumericDocValuesField(DocumentManifest.MTIME, 0));
+        ldoc.add(new BinaryDocValuesField(DocumentManifest.HASH, new BytesRef(new byte[32])));
+        return ldoc;
+    }
+
+    /** The worker's default analysis chain, which the corpus is indexed with. */
+    static AnalysisChain defaultAnalysis() throws IOException {
+        return AnalysisChain.build("", "none", false, false, 0, "none");
+    }
+
+    /** Directory of an index holding documents 0 .. docs-1, built on first use. */
+    public static synchronized Path index(long docs) throws Exception {
+        Path dir = Paths.get(System.getProperty("bench.corpus.dir", "target/corpus"))
+                // one directory per index schema: a worker would rebuild a corpus written with an older one
+                .resolve("schema-" + AnalysisChain.SCHEMA).resolve(Long.toString(docs));
+        if (Files.exists(dir.resolve(COMPLETE))) {
+            return dir;
+        }
+        log.warn("Building a synthetic corpus of {} documents in {}", docs, dir);
+        Files.createDirectories(dir);
+        AnalysisChain analysis = defaultAnalysis();
+        IndexWriterConfig config = new IndexWriterConfig(analysis.indexAnalyzer())
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                .setRAMBufferSizeMB(256);
+        long start = System.nanoTime();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FSDirectory fs = FSDirectory.open(dir); IndexWriter writer = new IndexWriter(fs, config)) {
+            List<Future<?>> parts = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int part = t;
+                parts.add(pool.submit(() -> {
+                    for (long d = part; d < docs; d += threads) {
+                        writer.addDocument(document(d, analysis));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+            writer.setLiveCommitData(analysis.commitData().entrySet());
+            writer.commit();
+        } finally {
+            pool.shutdownNow();
+        }
+        try (FSDirectory fs = FSDirectory.open(dir); DirectoryReader reader = DirectoryReader.open(fs)) {
+            log.warn("Corpus of {} documents built in {} s, {} segments", reader.numDocs(),
+                    (System.nanoTime() - start) / 1_000_000_000, reader.leaves().size());
+        }
+        Files.createFile(dir.resolve(COMPLETE));
+        return dir;
+    }
+}
@@ -0,0 +1,59 @@
+package me.zookeeper.leader_election.worker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A Worker in a Spring context of its own, configured as in the application
+ * (every other property at its {@code @Value} default), without the web layer
+ * or ZooKeeper: benchmarks call its endpoints as methods.
+ */
+final class WorkerFixture implements AutoCloseable {
+
+    private final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+    private final Path documents;
+    final Worker worker;
+
+    /**
+     * @param index      index directory to open (or create)
+     * @param properties overrides, e.g. {@code search.similarity}
+     */
+    WorkerFixture(Path index, Map<String, Object> properties) throws IOException {
+        this.documents = Files.createTempDirectory("bench-docs");
+        Map<String, Object> props = new HashMap<>(properties);
+        props.put("mydocument.path", documents.toString());
+        props.put("lucene.index.path", index.toString());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", props));
+        // meters are recorded but never scraped, as with nothing exposing them
+        context.registerBean(SimpleMeterRegistry.class);
+        context.register(Worker.class);
+        context.refresh();
+        this.worker = context.getBean(Worker.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        delete(documents);
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
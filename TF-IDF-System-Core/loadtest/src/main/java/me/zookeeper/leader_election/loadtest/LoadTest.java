@@ -0,0 +1,466 @@
+package me.zookeeper.leader_election.loadtest;
+
+import Document_and_Data.SearchResponse;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts a {@link LocalCluster}, seeds it, then runs a mix of searches and
+ * uploads against whichever node /leader_info names, and prints throughput,
+ * latency percentiles (HdrHistogram) and a per-second timeline.
+ * <p>
+ * With {@code --rate} the load is open: requests are due at fixed intervals and
+ * latency counts from when a request was due, so a stall shows up in the
+ * percentiles instead of just slowing the clients down (coordinated omission).
+ * Latencies are those of answered requests (complete or partial); failures are
+ * counted apart, and without {@code --rate} a client backs off briefly after one.
+ * <p>
+ * With {@code --fault} one failure is injected {@code --fault-at} seconds into
+ * the run, and the report adds how long searches took to recover (until the
+ * last failed or partial one, and for a leader fault until one succeeded on the
+ * new leader) and their latency before, during and after.
+ * <pre>
+ * java -jar target/loadtest.jar --nodes=5 --threads=16 --duration=60 --fault=kill-worker --fault-at=20
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final long MAX_LATENCY_US = TimeUnit.MINUTES.toMicros(2);
+    private static final int SEED_BATCH = 100;
+    // a closed-loop client waits this long after a failure, as a real one would, instead of spinning on refusals
+    private static final long FAILURE_BACKOFF_MS = 50;
+    private static final String USAGE = """
+            Options (--name=value):
+              --nodes=4             application instances; one leads, the rest are workers
+              --zk=1                ZooKeeper servers (TestingServer for 1, TestingCluster above)
+              --threads=8           client threads
+              --duration=60         measured seconds
+              --warmup=10           seconds of load before measuring
+              --rate=0              requests per second over all threads, 0 = as fast as answered
+              --upload-ratio=0.05   share of requests that upload a new document
+              --seed-docs=2000      documents uploaded before the load starts
+              --query-terms=3       words per query, 1 to this many
+              --k=10                hits per search
+              --timeout-ms=10000    per-request timeout
+              --fault=none          none | kill-worker | kill-leader | expire-worker | expire-leader
+              --fault-at=20         seconds into the measured run
+              --dir=<temp>          where the nodes keep documents and indexes (deleted afterwards if temporary)
+              --hgrm=<dir>          also write percentile distributions (search.hgrm, upload.hgrm) there
+              --set=key=value       application property for every node, repeatable
+            """;
+
+    private enum Op { SEARCH, UPLOAD }
+
+    // what one request came to
+    private enum Outcome { OK, PARTIAL, FAILED }
+
+    private final Map<String, String> options;
+    private final List<String> properties;
+    private final Workload workload;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private LocalCluster cluster;
+    private final AtomicLong uploaded = new AtomicLong();
+
+    // per measured second and operation; the totals are added up at the end
+    private Histogram[][] latency;
+    private AtomicLongArray[][] counts;
+    private volatile long measureStart = Long.MAX_VALUE;
+    private volatile boolean measuring;
+
+    // the injected fault: when, and what recovery is waiting for
+    private volatile long faultAt;
+    private volatile String faultDescription;
+    private volatile String oldLeader;
+    private final AtomicLong lastBadAfterFault = new AtomicLong();
+    private final AtomicLong newLeaderFirstSuccess = new AtomicLong();
+    private final AtomicLong badDuringRecovery = new AtomicLong();
+
+    private LoadTest(Map<String, String> options, List<String> properties) {
+        this.options = options;
+        this.properties = properties;
+        this.workload = new Workload(intOption("query-terms", 3));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> properties = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("-h") || arg.equals("--help")) {
+                System.out.print(USAGE);
+                return;
+            }
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Unrecognised argument " + arg);
+                System.err.print(USAGE);
+                System.exit(2);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.equals("set")) {
+                properties.add(value);
+            } else {
+                options.put(name, value);
+            }
+        }
+        new LoadTest(options, properties).run();
+        // the nodes' runner threads never return
+        System.exit(0);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return Double.parseDouble(option(name, Double.toString(defaultValue)));
+    }
+
+    /* -------------------- RUN -------------------- */
+
+    private void run() throws Exception {
+        int nodes = Math.max(2, intOption("nodes", 4));
+        int duration = intOption("duration", 60);
+        String fault = option("fault", "none");
+        if (!List.of("none", "kill-worker", "kill-leader", "expire-worker", "expire-leader").contains(fault)) {
+            throw new IllegalArgumentException("Unknown fault " + fault);
+        }
+
+        boolean temporary = !options.containsKey("dir");
+        Path dir = temporary ? Files.createTempDirectory("tfidf-loadtest") : Paths.get(options.get("dir"));
+        Map<String, String> props = new LinkedHashMap<>();
+        for (String p : properties) {
+            props.put(p.substring(0, p.indexOf('=')), p.substring(p.indexOf('=') + 1));
+        }
+
+        latency = new Histogram[Op.values().length][duration + 1];
+        counts = new AtomicLongArray[Op.values().length][Outcome.values().length];
+        for (Op op : Op.values()) {
+            for (int s = 0; s <= duration; s++) {
+                latency[op.ordinal()][s] = new ConcurrentHistogram(MAX_LATENCY_US, 3);
+            }
+            for (Outcome o : Outcome.values()) {
+                counts[op.ordinal()][o.ordinal()] = new AtomicLongArray(duration + 1);
+            }
+        }
+
+        try (LocalCluster c = new LocalCluster(intOption("zk", 1), dir, props)) {
+            cluster = c;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < nodes; i++) {
+                cluster.start();
+            }
+            cluster.awaitReady(nodes - 1, 60_000);
+            log.info("{} nodes up in {} ms, leader {}", nodes, (System.nanoTime() - t0) / 1_000_000, cluster.leaderAddress());
+            seed(intOption("seed-docs", 2000));
+
+            int threads = intOption("threads", 8);
+            ExecutorService clients = Executors.newFixedThreadPool(threads);
+            long warmup = TimeUnit.SECONDS.toNanos(intOption("warmup", 10));
+            long start = System.nanoTime();
+            long end = start + warmup + TimeUnit.SECONDS.toNanos(duration);
+            List<Future<?>> running = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                running.add(clients.submit(() -> client(id, threads, start, end)));
+            }
+
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(warmup));
+            measureStart = System.nanoTime();
+            measuring = true;
+            if (!fault.equals("none")) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(intOption("fault-at", 20)));
+                inject(fault);
+            }
+            for (Future<?> f : running) {
+                f.get();
+            }
+            measuring = false;
+            clients.shutdown();
+            report(duration, System.out);
+        } finally {
+            if (temporary) {
+                delete(dir);
+            }
+        }
+    }
+
+    // bulk uploads in batches; the first may wait for the leader to assign shard groups
+    private void seed(int docs) throws Exception {
+        SplittableRandom random = new SplittableRandom(42);
+        long deadline = System.currentTimeMillis() + 60_000;
+        long start = System.nanoTime();
+        for (int done = 0; done < docs; ) {
+            int n = Math.min(SEED_BATCH, docs - done);
+            Multipart body = new Multipart();
+            for (int i = 0; i < n; i++) {
+                body.file("files", "seed-" + (done + i) + ".txt", workload.document(random));
+            }
+            HttpResponse<String> response = http.send(body.post(URI.create(cluster.leaderAddress() + "/leader/upload-bulk"))
+                    .timeout(Duration.ofMinutes(2)).build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                done += n;
+            } else if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Seeding failed: " + response.statusCode() + " " + response.body());
+            } else {
+                Thread.sleep(200);
+            }
+        }
+        log.info("Seeded {} documents in {} ms", docs, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void client(int id, int threads, long start, long end) {
+        SplittableRandom random = new SplittableRandom(id * 0x9E3779B97F4A7C15L + 1);
+        double rate = doubleOption("rate", 0);
+        double uploadRatio = doubleOption("upload-ratio", 0.05);
+        // each thread's share of the rate, staggered so the threads do not fire together
+        long interval = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+        long due = start + (interval > 0 ? interval * id / threads : 0);
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0) {
+                if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                }
+            } else {
+                due = now;
+            }
+            if (due >= end) {
+                return;
+            }
+            Op op = random.nextDouble() < uploadRatio ? Op.UPLOAD : Op.SEARCH;
+            String leader = cluster.leaderAddress();
+            Outcome outcome;
+            try {
+                outcome = leader == null ? Outcome.FAILED
+                        : op == Op.SEARCH ? search(leader, random) : upload(leader, id, random);
+            } catch (IOException e) {
+                outcome = Outcome.FAILED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            record(op, outcome, leader, due, System.nanoTime());
+            due += interval;
+            if (outcome == Outcome.FAILED && interval == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FAILURE_BACKOFF_MS));
+            }
+        }
+    }
+
+    private Outcome search(String leader, SplittableRandom random) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(leader + "/leader/start?k=" + intOption("k", 10)))
+                .timeout(Duration.ofMillis(intOption("timeout-ms", 10_000)))
+                .header("Content-Type", "text/plain")
+                .POST(HttpRequest.BodyPublishers.ofString(workload.query(random)))
+                .build();
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            return Outcome.FAILED;
+        }
+        SearchResponse body = mapper.readValue(response.body(), SearchResponse.class);
+        return body.isPartial() ? Outcome.PARTIAL : Outcome.OK;
+    }
+
+    private Outcome upload(String leader, int thread, SplittableRandom random) throws IOException, InterruptedException {
+        Multipart body = new Multipart();
+        body.file("file", "load-" + thread + "-" + uploaded.incrementAndGet() + ".txt", workload.document(random));
+        HttpResponse<Void> response = http.send(body.post(URI.create(leader + "/leader/upload"))
+                .timeout(Duration.ofMillis(intOption("timeout-ms", 10_000))).build(), HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() == 200 ? Outcome.OK : Outcome.FAILED;
+    }
+
+    private void record(Op op, Outcome outcome, String leader, long due, long done) {
+        if (!measuring || due < measureStart) {
+            return;
+        }
+        int second = (int) Math.min(latency[0].length - 1, TimeUnit.NANOSECONDS.toSeconds(done - measureStart));
+        if (outcome != Outcome.FAILED) {
+            latency[op.ordinal()][second].recordValue(Math.min(MAX_LATENCY_US, TimeUnit.NANOSECONDS.toMicros(done - due)));
+        }
+        counts[op.ordinal()][outcome.ordinal()].incrementAndGet(second);
+        // recovery is judged by searches: uploads fail now and then anyway, when a replica write times out
+        if (faultDescription != null && due >= faultAt && op == Op.SEARCH) {
+            if (outcome != Outcome.OK) {
+                lastBadAfterFault.accumulateAndGet(done, Math::max);
+                badDuringRecovery.incrementAndGet();
+            } else if (oldLeader != null && !oldLeader.equals(leader)) {
+                newLeaderFirstSuccess.compareAndSet(0, done);
+            }
+        }
+    }
+
+    /* -------------------- FAULTS -------------------- */
+
+    private void inject(String fault) throws Exception {
+        boolean leaderFault = fault.endsWith("-leader");
+        LocalCluster.Node target = leaderFault
+                ? cluster.leader().orElseThrow(() -> new IllegalStateException("No leader to fail"))
+                : cluster.workers().stream().reduce((a, b) -> b)
+                        .orElseThrow(() -> new IllegalStateException("No worker to fail"));
+        oldLeader = leaderFault ? target.address() : null;
+        faultAt = System.nanoTime();
+        faultDescription = fault + " node " + target.id() + " (" + target.address() + ")";
+        if (fault.startsWith("kill")) {
+            cluster.kill(target);
+        } else {
+            cluster.expireSession(target);
+        }
+    }
+
+    /* -------------------- REPORT -------------------- */
+
+    private void report(int duration, PrintStream out) throws IOException {
+        out.println();
+        out.printf("%d s measured, %s threads, rate %s%n", duration, option("threads", "8"),
+                doubleOption("rate", 0) > 0 ? option("rate", "0") + "/s" : "unbounded");
+        for (Op op : Op.values()) {
+            Histogram total = merge(op, 0, duration + 1);
+            long ok = sum(op, Outcome.OK, 0, duration + 1);
+            long partial = sum(op, Outcome.PARTIAL, 0, duration + 1);
+            long failed = sum(op, Outcome.FAILED, 0, duration + 1);
+            out.printf("%-7s %8.1f ok/s  ok %d  partial %d  failed %d  %s%n", op.name().toLowerCase(),
+                    ok / (double) duration, ok, partial, failed, percentiles(total));
+            if (options.containsKey("hgrm")) {
+                Path dir = Files.createDirectories(Paths.get(options.get("hgrm")));
+                try (PrintStream file = new PrintStream(Files.newOutputStream(dir.resolve(op.name().toLowerCase() + ".hgrm")))) {
+                    // microseconds recorded, milliseconds written
+                    total.outputPercentileDistribution(file, 1000.0);
+                }
+            }
+        }
+
+        out.println();
+        out.println("  s   search/s  upload/s   partial  failed   search p99 ms");
+        for (int s = 0; s < duration; s++) {
+            long partial = 0, failed = 0;
+            for (Op op : Op.values()) {
+                partial += counts[op.ordinal()][Outcome.PARTIAL.ordinal()].get(s);
+                failed += counts[op.ordinal()][Outcome.FAILED.ordinal()].get(s);
+            }
+            Histogram search = latency[Op.SEARCH.ordinal()][s];
+            out.printf("%3d %10d %9d %9d %7d %15.1f%n", s, search.getTotalCount(),
+                    latency[Op.UPLOAD.ordinal()][s].getTotalCount(), partial, failed,
+                    search.getValueAtPercentile(99) / 1000.0);
+        }
+
+        if (faultDescription != null) {
+            long recoveredAt = Math.max(lastBadAfterFault.get(), oldLeader != null ? newLeaderFirstSuccess.get() : 0);
+            int faultSecond = (int) TimeUnit.NANOSECONDS.toSeconds(faultAt - measureStart);
+            out.println();
+            out.printf("fault   %s at %.1f s%n", faultDescription, (faultAt - measureStart) / 1e9);
+            if (oldLeader != null && newLeaderFirstSuccess.get() == 0) {
+                out.println("recovery: no search succeeded on a new leader before the end of the run");
+                recoveredAt = measureStart + TimeUnit.SECONDS.toNanos(duration);
+            } else if (recoveredAt == 0) {
+                out.println("recovery: no request failed or came back partial");
+            } else if (recoveredAt > measureStart + TimeUnit.SECONDS.toNanos(duration - 1)) {
+                // still failing in the last second: e.g. a shard without another replica
+                out.printf("recovery: none before the end of the run, %d failed or partial searches%n", badDuringRecovery.get());
+            } else {
+                out.printf("recovery: %.2f s, %d failed or partial searches on the way%n",
+                        (recoveredAt - faultAt) / 1e9, badDuringRecovery.get());
+                if (oldLeader != null) {
+                    out.printf("first search answered by the new leader %.2f s after the fault%n",
+                            (newLeaderFirstSuccess.get() - faultAt) / 1e9);
+                }
+            }
+            int recoveredSecond = recoveredAt == 0 ? faultSecond
+                    : (int) Math.min(duration, TimeUnit.NANOSECONDS.toSeconds(recoveredAt - measureStart) + 1);
+            out.printf("search before   %s%n", percentiles(merge(Op.SEARCH, 0, faultSecond)));
+            out.printf("search during   %s%n", percentiles(merge(Op.SEARCH, faultSecond, recoveredSecond)));
+            out.printf("search after    %s%n", percentiles(merge(Op.SEARCH, recoveredSecond, duration + 1)));
+        }
+    }
+
+    private Histogram merge(Op op, int from, int to) {
+        Histogram h = new Histogram(MAX_LATENCY_US, 3);
+        for (int s = from; s < to; s++) {
+            h.add(latency[op.ordinal()][s]);
+        }
+        return h;
+    }
+
+    private long sum(Op op, Outcome outcome, int from, int to) {
+        long n = 0;
+        for (int s = from; s < to; s++) {
+            n += counts[op.ordinal()][outcome.ordinal()].get(s);
+        }
+        return n;
+    }
+
+    private static String percentiles(Histogram h) {
+        if (h.getTotalCount() == 0) {
+            return "(no requests)";
+        }
+        return String.format("p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f ms (%d)",
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0, h.getTotalCount());
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    // multipart/form-data of text files, built in memory (documents here are a few KB)
+    private static final class Multipart {
+        private final String boundary = "----loadtest" + UUID.randomUUID();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void file(String field, String filename, String text) {
+            write("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + field + "\"; filename=\""
+                    + URLEncoder.encode(filename, StandardCharsets.UTF_8) + "\"\r\n"
+                    + "Content-Type: text/plain\r\n\r\n" + text + "\r\n");
+        }
+
+        HttpRequest.Builder post(URI uri) {
+            write("--" + boundary + "--\r\n");
+            return HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(bytes.toByteArray()));
+        }
+
+        private void write(String s) {
+            bytes.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
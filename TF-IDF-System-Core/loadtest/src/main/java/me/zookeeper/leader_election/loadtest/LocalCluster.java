@@ -0,0 +1,203 @@
+package me.zookeeper.leader_election.loadtest;
+
+import me.zookeeper.leader_election.app.ZookeeperLeaderElectionApplication;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingCluster;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole cluster in this JVM: ZooKeeper from Curator's {@link TestingServer}
+ * (or a {@link TestingCluster} of several servers) and N nodes, each the real
+ * application in a Spring context of its own, on a random local port, with
+ * its own documents and index directories. The first node started wins the
+ * election and leads; the others are workers.
+ * <p>
+ * Faults are injected the way they happen: {@link #kill(Node)} closes a
+ * node's context (its ephemeral znodes go with its sessions, its port stops
+ * answering), {@link #expireSession(Node)} expires its ZooKeeper sessions
+ * while the node keeps running, as after a long GC pause or a partition.
+ */
+public final class LocalCluster implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalCluster.class);
+
+    private static final String LEADER_INFO = "/leader_info";
+    private static final String REGISTRY = "/service_registry";
+    private static final long START_TIMEOUT_S = 120;
+
+    /** One application instance; {@code address} is what it registers, e.g. http://127.0.0.1:41234. */
+    public record Node(int id, String address, ConfigurableApplicationContext context) {
+        boolean isRunning() {
+            return context.isActive();
+        }
+    }
+
+    private final Closeable zookeeper;
+    private final String connectString;
+    private final Path root;
+    private final Map<String, String> properties;
+    private final List<Node> nodes = new ArrayList<>();
+    // the harness's own session, to find the leader the way a client would
+    private final CuratorFramework client;
+    private final CuratorCache leaderInfo;
+
+    /**
+     * @param zkServers  1 for a TestingServer, more for a TestingCluster
+     * @param properties extra application properties for every node (they override application.properties)
+     */
+    public LocalCluster(int zkServers, Path root, Map<String, String> properties) throws Exception {
+        this.root = root;
+        this.properties = properties;
+        if (zkServers > 1) {
+            TestingCluster cluster = new TestingCluster(zkServers);
+            cluster.start();
+            this.zookeeper = cluster;
+            this.connectString = cluster.getConnectString();
+        } else {
+            TestingServer server = new TestingServer(true);
+            this.zookeeper = server;
+            this.connectString = server.getConnectString();
+        }
+        log.info("ZooKeeper ({} server(s)) at {}", zkServers, connectString);
+        this.client = CuratorFrameworkFactory.newClient(connectString, new ExponentialBackoffRetry(200, 10));
+        client.start();
+        client.blockUntilConnected(30, TimeUnit.SECONDS);
+        this.leaderInfo = CuratorCache.build(client, LEADER_INFO, CuratorCache.Options.SINGLE_NODE_CACHE);
+        leaderInfo.start();
+    }
+
+    /** Starts one node; returns once its server listens and it has joined the election. */
+    public synchronized Node start() throws Exception {
+        int id = nodes.size();
+        Path dir = root.resolve("node-" + id);
+        Files.createDirectories(dir.resolve("documents"));
+        Files.createDirectories(dir.resolve("index"));
+
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--node.host=127.0.0.1",
+                "--zookeeper.connection=" + connectString,
+                "--mydocument.path=" + dir.resolve("documents"),
+                "--lucene.index.path=" + dir.resolve("index"),
+                "--spring.main.banner-mode=off",
+                "--spring.main.log-startup-info=false",
+                "--logging.level.root=WARN"));
+        // command-line arguments, so they win over the application.properties in the jar
+        properties.forEach((k, v) -> args.add("--" + k + "=" + v));
+
+        CompletableFuture<ConfigurableApplicationContext> started = new CompletableFuture<>();
+        SpringApplication app = new SpringApplicationBuilder(ZookeeperLeaderElectionApplication.class)
+                .listeners((ApplicationListener<ApplicationEvent>) event -> {
+                    if (event instanceof ApplicationStartedEvent e) {
+                        started.complete(e.getApplicationContext());
+                    }
+                })
+                .build();
+        // the application's runner volunteers for leadership and then never returns, so each node gets a thread
+        Thread runner = new Thread(() -> {
+            try {
+                app.run(args.toArray(String[]::new));
+            } catch (Throwable e) {
+                started.completeExceptionally(e);
+            }
+        }, "node-" + id);
+        runner.setDaemon(true);
+        runner.start();
+
+        ConfigurableApplicationContext context = started.get(START_TIMEOUT_S, TimeUnit.SECONDS);
+        String port = context.getEnvironment().getProperty("local.server.port");
+        Node node = new Node(id, "http://127.0.0.1:" + port, context);
+        nodes.add(node);
+        log.info("Node {} started at {}", id, node.address());
+        return node;
+    }
+
+    /** Waits until the leader is known and {@code workers} workers are registered. */
+    public void awaitReady(int workers, long timeoutMs) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (leaderAddress() == null || registeredWorkers() < workers) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Cluster not ready after " + timeoutMs + " ms: leader "
+                        + leaderAddress() + ", " + registeredWorkers() + " of " + workers + " workers registered");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private int registeredWorkers() throws Exception {
+        return client.checkExists().forPath(REGISTRY) == null ? 0 : client.getChildren().forPath(REGISTRY).size();
+    }
+
+    /** The leader's address as published in /leader_info, or null while there is none. */
+    public String leaderAddress() {
+        return leaderInfo.get(LEADER_INFO)
+                .map(ChildData::getData)
+                .map(data -> new String(data, StandardCharsets.UTF_8))
+                .orElse(null);
+    }
+
+    public Optional<Node> leader() {
+        String address = leaderAddress();
+        return nodes.stream().filter(n -> n.isRunning() && n.address().equals(address)).findFirst();
+    }
+
+    /** Running nodes other than the leader. */
+    public List<Node> workers() {
+        String address = leaderAddress();
+        return nodes.stream().filter(n -> n.isRunning() && !n.address().equals(address)).toList();
+    }
+
+    /* -------------------- FAULTS -------------------- */
+
+    // a crash as ZooKeeper sees it: sessions closed, port gone
+    public void kill(Node node) {
+        log.warn("Killing node {} ({})", node.id(), node.address());
+        node.context().close();
+    }
+
+    // both of the node's sessions (the raw client's and Curator's); the process itself carries on
+    public void expireSession(Node node) throws Exception {
+        log.warn("Expiring the ZooKeeper sessions of node {} ({})", node.id(), node.address());
+        node.context().getBean(ZooKeeper.class).getTestable().injectSessionExpiration();
+        node.context().getBean(CuratorFramework.class).getZookeeperClient().getZooKeeper()
+                .getTestable().injectSessionExpiration();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Node node : nodes) {
+            if (node.isRunning()) {
+                try {
+                    node.context().close();
+                } catch (RuntimeException e) {
+                    log.warn("Closing node {} failed: {}", node.id(), e.getMessage());
+                }
+            }
+        }
+        leaderInfo.close();
+        client.close();
+        zookeeper.close();
+    }
+}
@@ -0,0 +1,73 @@
+package me.zookeeper.leader_election.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Queries and documents drawn from one Zipf-distributed vocabulary, so that
+ * queries hit the uploaded documents about as often as real ones would:
+ * frequent words match much of the corpus, rare ones a handful of documents.
+ */
+final class Workload {
+
+    private static final int VOCABULARY = 20_000;
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    // cumulative probability of every rank
+    private static final double[] CDF = new double[VOCABULARY];
+
+    static {
+        double sum = 0;
+        for (int r = 0; r < VOCABULARY; r++) {
+            sum += 1.0 / Math.pow(r + 1, ZIPF_EXPONENT);
+            CDF[r] = sum;
+        }
+        for (int r = 0; r < VOCABULARY; r++) {
+            CDF[r] /= sum;
+        }
+    }
+
+    private final int maxQueryTerms;
+
+    Workload(int maxQueryTerms) {
+        this.maxQueryTerms = Math.max(1, maxQueryTerms);
+    }
+
+    // letters only, so every analysis chain keeps the word whole
+    static String word(int rank) {
+        StringBuilder sb = new StringBuilder();
+        int n = rank + 1;
+        while (n > 0) {
+            sb.append((char) ('a' + (n - 1) % 26));
+            n = (n - 1) / 26;
+        }
+        return sb.append('q').toString();
+    }
+
+    private static String randomWord(SplittableRandom random) {
+        int i = Arrays.binarySearch(CDF, random.nextDouble());
+        return word(Math.min(VOCABULARY - 1, i >= 0 ? i : -i - 1));
+    }
+
+    /** One to maxQueryTerms words. */
+    String query(SplittableRandom random) {
+        int terms = 1 + random.nextInt(maxQueryTerms);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(randomWord(random));
+        }
+        return sb.toString();
+    }
+
+    /** 50 to 300 words. */
+    String document(SplittableRandom random) {
+        int words = 50 + random.nextInt(251);
+        StringBuilder sb = new StringBuilder(words * 6);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(randomWord(random));
+        }
+        return sb.toString();
+    }
+}
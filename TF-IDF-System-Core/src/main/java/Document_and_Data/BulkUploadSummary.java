@@ -0,0 +1,67 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of a bulk upload; with durability=enqueue "indexed" counts documents accepted for indexing
+@Setter
+@Getter
+public class BulkUploadSummary implements Serializable {
+    // failures are listed up to this many, the count is always exact
+    public static final int MAX_LISTED_FAILURES = 100;
+
+    private int indexed;
+    private int failed;
+    private Map<String, Integer> perWorker = new LinkedHashMap<>();
+    private List<String> failures = new ArrayList<>();
+
+    public BulkUploadSummary() {}
+
+    public void addIndexed(String worker, int count) {
+        indexed += count;
+        if (worker != null) {
+            perWorker.merge(worker, count, Integer::sum);
+        }
+    }
+
+    public void addFailure(String description) {
+        failed++;
+        if (failures.size() < MAX_LISTED_FAILURES) {
+            failures.add(description);
+        }
+    }
+
+    // folds a worker's batch summary into this one
+    public void merge(String worker, BulkUploadSummary other) {
+        addIndexed(worker, other.getIndexed());
+        for (String f : other.getFailures()) {
+            addFailure(worker + ": " + f);
+        }
+        // failures the worker counted but did not list
+        failed += other.getFailed() - other.getFailures().size();
+    }
+
+    // folds in another replica's summary of the same batch: the documents were already counted once
+    public void mergeReplica(String worker, BulkUploadSummary other) {
+        perWorker.merge(worker, other.getIndexed(), Integer::sum);
+        for (String f : other.getFailures()) {
+            addFailure(worker + ": " + f);
+        }
+        failed += other.getFailed() - other.getFailures().size();
+    }
+
+    @Override
+    public String toString() {
+        return "BulkUploadSummary{" +
+                "indexed=" + indexed +
+                ", failed=" + failed +
+                ", perWorker=" + perWorker +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// Term and field statistics for the terms of one query, either of a single shard or summed over all of them
+@Setter
+@Getter
+public class CorpusStats implements Serializable {
+    private List<FieldStats> fields = new ArrayList<>();
+    private List<TermStats> terms = new ArrayList<>();
+
+    public CorpusStats() {}
+
+    public CorpusStats(List<FieldStats> fields, List<TermStats> terms) {
+        this.fields = fields;
+        this.terms = terms;
+    }
+
+    @Override
+    public String toString() {
+        return "CorpusStats{fields=" + fields + ", terms=" + terms + '}';
+    }
+}
@@ -0,0 +1,36 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Setter
+@Getter
+public class FieldStats implements Serializable {
+    private String field;
+    private long maxDoc;
+    private long docCount;
+    private long sumTotalTermFreq;
+    private long sumDocFreq;
+
+    public FieldStats() {}
+
+    public FieldStats(String field, long maxDoc, long docCount, long sumTotalTermFreq, long sumDocFreq) {
+        this.field = field;
+        this.maxDoc = maxDoc;
+        this.docCount = docCount;
+        this.sumTotalTermFreq = sumTotalTermFreq;
+        this.sumDocFreq = sumDocFreq;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldStats{" + field +
+                ", maxDoc=" + maxDoc +
+                ", docCount=" + docCount +
+                ", sumTotalTermFreq=" + sumTotalTermFreq +
+                ", sumDocFreq=" + sumDocFreq +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// Progress of a rebalancing pass, stored in /rebalance so a new leader resumes where the old one stopped
+@Setter
+@Getter
+public class RebalanceCheckpoint implements Serializable {
+    // the shard groups of the ring this pass places documents on
+    private List<String> ring = new ArrayList<>();
+    // source shards whose misplaced documents have all been moved
+    private List<String> completedShards = new ArrayList<>();
+    private long startedAt;
+    private long moved;
+    private long failed;
+    // a chunk already copied to its owner whose delete from the old shard may not have reached every replica
+    private String pendingShard;
+    private List<String> pendingPaths = new ArrayList<>();
+
+    public RebalanceCheckpoint() {}
+
+    public RebalanceCheckpoint(List<String> ring, long startedAt) {
+        this.ring = new ArrayList<>(ring);
+        this.startedAt = startedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "RebalanceCheckpoint{" +
+                "ring=" + ring +
+                ", completedShards=" + completedShards +
+                ", moved=" + moved +
+                ", failed=" + failed +
+                ", pendingShard='" + pendingShard + '\'' +
+                ", pendingPaths=" + pendingPaths.size() +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+// Leader -> worker search call
+@Setter
+@Getter
+public class SearchRequest implements Serializable {
+    private String query;
+    private int k = 10;
+    // corpus-wide statistics to score with; null means use the shard's own
+    private CorpusStats stats;
+    // scoring function spec (see Similarities); null means the worker's search.similarity
+    private String similarity;
+    // plain | lucene | json, see QueryLanguage; null means plain
+    private String syntax;
+
+    public SearchRequest() {}
+
+    public SearchRequest(String query, int k, CorpusStats stats) {
+        this.query = query;
+        this.k = k;
+        this.stats = stats;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchRequest{" +
+                "query='" + query + '\'' +
+                ", k=" + k +
+                ", globalStats=" + (stats != null) +
+                ", similarity='" + similarity + '\'' +
+                ", syntax='" + syntax + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+@Setter
+@Getter
+public class SearchResponse implements Serializable {
+    // ranked by score, highest first
+    private List<DocumentScoreInfo> hits = new ArrayList<>();
+    private int k;
+    private int offset;
+    // true when at least one worker failed or missed the deadline
+    private boolean partial;
+    private List<String> missingShards = new ArrayList<>();
+    // the scoring function every shard used, e.g. bm25(k1=1.2,b=0.75); null if the search named none and each
+    // shard scored with its own search.similarity
+    private String similarity;
+
+    public SearchResponse() {}
+
+    public SearchResponse(List<DocumentScoreInfo> hits, int k, int offset) {
+        this.hits = hits;
+        this.k = k;
+        this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResponse{" +
+                "hits=" + hits.size() +
+                ", k=" + k +
+                ", offset=" + offset +
+                ", partial=" + partial +
+                ", missingShards=" + missingShards +
+                ", similarity='" + similarity + '\'' +
+                '}';
+    }
+}
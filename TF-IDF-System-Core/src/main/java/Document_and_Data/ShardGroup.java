@@ -0,0 +1,34 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// A set of workers holding the same documents (replicas of one shard), stored under /shard_groups
+@Setter
+@Getter
+public class ShardGroup implements Serializable {
+    // the znode name under /shard_groups
+    private String id;
+    private List<String> members = new ArrayList<>();
+    // members still copying the group's documents from a peer: written to, not yet searched
+    private List<String> syncing = new ArrayList<>();
+
+    public ShardGroup() {}
+
+    public ShardGroup(List<String> members) {
+        this.members = new ArrayList<>(members);
+    }
+
+    @Override
+    public String toString() {
+        return "ShardGroup{" +
+                "id='" + id + '\'' +
+                ", members=" + members +
+                ", syncing=" + syncing +
+                '}';
+    }
+}
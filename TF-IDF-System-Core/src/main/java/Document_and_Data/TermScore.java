@@ -0,0 +1,36 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+// One term of a document with its TF-IDF weight, read from the document's stored term vector
+@Setter
+@Getter
+public class TermScore implements Serializable {
+    private String term;
+    // occurrences in the document
+    private long freq;
+    // documents of the shard containing the term
+    private long docFreq;
+    private double score;
+
+    public TermScore() {}
+
+    public TermScore(String term, long freq, long docFreq, double score) {
+        this.term = term;
+        this.freq = freq;
+        this.docFreq = docFreq;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return "TermScore{" + term +
+                ", freq=" + freq +
+                ", docFreq=" + docFreq +
+                ", score=" + score +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Setter
+@Getter
+public class TermStats implements Serializable {
+    private String field;
+    private String text;
+    private long docFreq;
+    private long totalTermFreq;
+
+    public TermStats() {}
+
+    public TermStats(String field, String text, long docFreq, long totalTermFreq) {
+        this.field = field;
+        this.text = text;
+        this.docFreq = docFreq;
+        this.totalTermFreq = totalTermFreq;
+    }
+
+    @Override
+    public String toString() {
+        return "TermStats{" + field + ":" + text +
+                ", docFreq=" + docFreq +
+                ", totalTermFreq=" + totalTermFreq +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package Document_and_Data;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// What a worker publishes about itself in its /service_registry znode (as JSON)
+@Setter
+@Getter
+public class WorkerNode implements Serializable {
+    private String address;
+    // available processors
+    private int capacity;
+    private long maxHeapBytes;
+    // live documents in the index, as of updatedAt (-1 until the worker first reports it)
+    private long docCount = -1;
+    // the shard groups this worker is a member of
+    private List<String> shardIds = new ArrayList<>();
+    private long updatedAt;
+
+    public WorkerNode() {}
+
+    public WorkerNode(String address) {
+        this.address = address;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerNode{" +
+                "address='" + address + '\'' +
+                ", capacity=" + capacity +
+                ", docCount=" + docCount +
+                ", shardIds=" + shardIds +
+                '}';
+    }
+}
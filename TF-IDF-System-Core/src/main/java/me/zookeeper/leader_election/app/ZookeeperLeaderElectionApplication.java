@@ -3,7 +3,8 @@ package me.zookeeper.leader_election.app;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication
+// the components live in sibling packages (leader, worker, registry, config, controller)
+@SpringBootApplication(scanBasePackages = "me.zookeeper.leader_election")
 public class ZookeeperLeaderElectionApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,180 @@
+package me.zookeeper.leader_election.config;
+
+import Document_and_Data.Document;
+import Document_and_Data.DocumentScoreInfo;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.*;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact wire format for search hits ({@code List<DocumentScoreInfo>}) between
+ * leader and workers, negotiated with {@code Accept: application/x-tfidf-hits}.
+ * JSON stays the default for every other client.
+ * <pre>
+ *   "TH" version(1)  varint count
+ *   per hit:  varint dir   0 = new directory, followed by varint length + UTF-8 bytes;
+ *                          n = the n-th directory sent so far
+ *             varint length + UTF-8 bytes of the file name
+ *             float score (big endian)
+ * </pre>
+ * Hits of one shard mostly share a handful of directories, so each directory
+ * goes over the wire once.
+ */
+public class BinaryHitsHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<DocumentScoreInfo>> {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-tfidf-hits";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    private static final byte[] MAGIC = {'T', 'H'};
+    private static final int VERSION = 1;
+
+    public BinaryHitsHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    // only List<DocumentScoreInfo>, not any list
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isHitList(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return isHitList(type) && canWrite(mediaType);
+    }
+
+    private static boolean isHitList(Type type) {
+        return type instanceof ParameterizedType pt
+                && pt.getRawType() instanceof Class<?> raw && List.class.isAssignableFrom(raw)
+                && pt.getActualTypeArguments()[0] == DocumentScoreInfo.class;
+    }
+
+    @Override
+    protected void writeInternal(List<DocumentScoreInfo> hits, Type type, HttpOutputMessage message) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(message.getBody()));
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarInt(out, hits.size());
+        Map<String, Integer> dirs = new HashMap<>();
+        for (DocumentScoreInfo hit : hits) {
+            String path = hit.getDocument().getName();
+            int slash = path.lastIndexOf('/') + 1;
+            String dir = path.substring(0, slash);
+            Integer id = dirs.get(dir);
+            if (id == null) {
+                dirs.put(dir, dirs.size() + 1);
+                writeVarInt(out, 0);
+                writeString(out, dir);
+            } else {
+                writeVarInt(out, id);
+            }
+            writeString(out, path.substring(slash));
+            out.writeFloat((float) hit.getScore());
+        }
+        out.flush();
+    }
+
+    @Override
+    protected List<DocumentScoreInfo> readInternal(Class<? extends List<DocumentScoreInfo>> clazz, HttpInputMessage message)
+            throws IOException {
+        return read(null, null, message);
+    }
+
+    @Override
+    public List<DocumentScoreInfo> read(Type type, Class<?> contextClass, HttpInputMessage message) throws IOException {
+        Decoder in = new Decoder(message.getBody());
+        if (in.readByte() != MAGIC[0] || in.readByte() != MAGIC[1] || in.readByte() != VERSION) {
+            throw new HttpMessageNotReadableException("Not a " + MEDIA_TYPE_VALUE + " v" + VERSION + " body", message);
+        }
+        int count = in.readVarInt();
+        List<DocumentScoreInfo> hits = new ArrayList<>(Math.min(count, 4096));
+        List<String> dirs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int ref = in.readVarInt();
+            String dir;
+            if (ref == 0) {
+                dir = in.readString();
+                dirs.add(dir);
+            } else if (ref <= dirs.size()) {
+                dir = dirs.get(ref - 1);
+            } else {
+                throw new HttpMessageNotReadableException("Unknown directory reference " + ref, message);
+            }
+            String name = in.readString();
+            hits.add(new DocumentScoreInfo(new Document(dir.isEmpty() ? name : dir.concat(name)), in.readFloat()));
+        }
+        return hits;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // one per body; reuses its byte buffer for every string
+    private static final class Decoder {
+        private final DataInputStream in;
+        private byte[] buf = new byte[256];
+
+        Decoder(InputStream body) {
+            this.in = new DataInputStream(new BufferedInputStream(body));
+        }
+
+        int readByte() throws IOException {
+            return in.read();
+        }
+
+        float readFloat() throws IOException {
+            return in.readFloat();
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length < 0) {
+                throw new IOException("Negative string length");
+            }
+            if (length > buf.length) {
+                buf = new byte[Math.max(length, buf.length * 2)];
+            }
+            in.readFully(buf, 0, length);
+            return new String(buf, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package me.zookeeper.leader_election.config;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * One pooled HTTP client for all leader -> worker traffic, so connections are
+ * kept alive between requests instead of being re-opened for every call.
+ * Every call carries the current request's trace ID (see {@link TraceContext}).
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager workerConnectionManager(
+            @Value("${http.client.max-total:200}") int maxTotal,
+            @Value("${http.client.max-per-route:50}") int maxPerRoute) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient workerHttpClient(PoolingHttpClientConnectionManager workerConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(workerConnectionManager)
+                .setConnectionManagerShared(true)
+                .build();
+    }
+
+    // general purpose client (uploads, downloads, rebalancing)
+    @Bean
+    @Primary
+    public RestTemplate restTemplate(CloseableHttpClient workerHttpClient,
+                                     @Value("${http.client.connect-timeout-ms:2000}") long connectTimeoutMs) {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(workerHttpClient);
+        factory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
+        RestTemplate restTemplate = new RestTemplate(factory);
+        restTemplate.getInterceptors().add(TraceContext.propagate());
+        return restTemplate;
+    }
+
+    // search fan-out client: the read timeout is the per-worker deadline
+    @Bean
+    public RestTemplate searchRestTemplate(CloseableHttpClient workerHttpClient,
+                                           @Value("${http.client.connect-timeout-ms:2000}") long connectTimeoutMs,
+                                           @Value("${search.worker-timeout-ms:2000}") long workerTimeoutMs,
+                                           @Value("${search.binary-hits:true}") boolean binaryHits) {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(workerHttpClient);
+        factory.setConnectTimeout(Duration.ofMillis(Math.min(connectTimeoutMs, workerTimeoutMs)));
+        factory.setReadTimeout(Duration.ofMillis(workerTimeoutMs));
+        RestTemplate restTemplate = new RestTemplate(factory);
+        restTemplate.getInterceptors().add(TraceContext.propagate());
+        if (binaryHits) {
+            // listed first, so hits are requested as application/x-tfidf-hits (JSON is still accepted)
+            restTemplate.getMessageConverters().add(0, new BinaryHitsHttpMessageConverter());
+        }
+        return restTemplate;
+    }
+}
@@ -0,0 +1,77 @@
+package me.zookeeper.leader_election.config;
+
+import org.slf4j.MDC;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The trace ID of the request being served, kept in the logging MDC so every
+ * log line carries it. {@link TraceIdFilter} sets it for incoming requests,
+ * {@link #propagate()} sends it on to workers, and {@link #wrap} carries it
+ * onto the fan-out threads that make those calls.
+ */
+public final class TraceContext {
+
+    public static final String HEADER = "X-Trace-Id";
+    public static final String MDC_KEY = "traceId";
+
+    private TraceContext() {}
+
+    /** The current trace ID, or null outside a request. */
+    public static String current() {
+        return MDC.get(MDC_KEY);
+    }
+
+    static String newId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    }
+
+    /** Runs {@code task} with the caller's MDC, wherever it runs. */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            set(context);
+            try {
+                return task.call();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    public static Runnable wrap(Runnable task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            set(context);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    private static void set(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+
+    /** Adds the current trace ID to outgoing calls. */
+    public static ClientHttpRequestInterceptor propagate() {
+        return (request, body, execution) -> {
+            String traceId = current();
+            if (traceId != null) {
+                request.getHeaders().set(HEADER, traceId);
+            }
+            return execution.execute(request, body);
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package me.zookeeper.leader_election.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Takes the trace ID from the {@code X-Trace-Id} header (the leader sends its
+ * own to every worker) or makes one up, and returns it in the response, so a
+ * client can quote it and one grep finds the query on every node.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TraceIdFilter extends OncePerRequestFilter {
+
+    // long enough to be unique in the logs, short enough not to be abused as a payload
+    private static final int MAX_LENGTH = 64;
+    private static final Pattern VALID = Pattern.compile("[\\w.-]+");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String traceId = request.getHeader(TraceContext.HEADER);
+        if (traceId == null || traceId.isBlank() || traceId.length() > MAX_LENGTH || !VALID.matcher(traceId).matches()) {
+            traceId = TraceContext.newId();
+        }
+        MDC.put(TraceContext.MDC_KEY, traceId);
+        response.setHeader(TraceContext.HEADER, traceId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(TraceContext.MDC_KEY);
+        }
+    }
+}
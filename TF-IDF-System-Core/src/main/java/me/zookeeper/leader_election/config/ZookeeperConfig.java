@@ -1,4 +1,7 @@
 package me.zookeeper.leader_election.config;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.zookeeper.ZooKeeper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -20,5 +23,14 @@ public class ZookeeperConfig {
         });
     }
 
+    // for Curator's recipes (the registry cache); a session of its own, next to the raw client above
+    @Bean(destroyMethod = "close")
+    public CuratorFramework curatorFramework(@Value("${zookeeper.connection}") String zookeeperConnection) {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(zookeeperConnection, 3000, 3000,
+                new ExponentialBackoffRetry(200, 10));
+        client.start();
+        return client;
+    }
+
 
 }
@@ -1,5 +1,6 @@
 package me.zookeeper.leader_election.controller;
 
+import Document_and_Data.WorkerNode;
 import me.zookeeper.leader_election.leader.LeaderElection;
 import me.zookeeper.leader_election.registry.ServiceRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
@@ -36,4 +38,10 @@ public class Controllers {
         return ResponseEntity.ok(services);
     }
 
+    @GetMapping("/nodes")
+    public ResponseEntity<Map<String, WorkerNode>> getNodes() {
+        Map<String, WorkerNode> nodes = serviceRegistry.getNodes();
+        return ResponseEntity.ok(nodes == null ? Map.of() : nodes);
+    }
+
 }
@@ -0,0 +1,60 @@
+package me.zookeeper.leader_election.leader;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Walks the documents of an uploaded stream: the file itself, or every entry of
+ * a zip, tar or tar.gz archive. Entries are handed over one at a time as
+ * streams, so nothing is buffered in memory.
+ */
+final class ArchiveReader {
+
+    enum Format { PLAIN, ZIP, TAR, TAR_GZ }
+
+    private ArchiveReader() {}
+
+    static Format fromFilename(String filename) {
+        String lower = filename == null ? "" : filename.toLowerCase();
+        if (lower.endsWith(".zip")) return Format.ZIP;
+        if (lower.endsWith(".tar")) return Format.TAR;
+        if (lower.endsWith(".tar.gz") || lower.endsWith(".tgz")) return Format.TAR_GZ;
+        return Format.PLAIN;
+    }
+
+    static Format fromContentType(String contentType) {
+        String ct = contentType == null ? "" : contentType.toLowerCase();
+        if (ct.startsWith("application/zip")) return Format.ZIP;
+        if (ct.startsWith("application/x-tar")) return Format.TAR;
+        if (ct.startsWith("application/gzip") || ct.startsWith("application/x-gzip")) return Format.TAR_GZ;
+        return Format.PLAIN;
+    }
+
+    static void forEachEntry(Format format, String name, InputStream in, BulkUploader.EntryConsumer consumer) throws IOException {
+        switch (format) {
+            case ZIP:
+                ZipInputStream zip = new ZipInputStream(in);
+                ZipEntry ze;
+                while ((ze = zip.getNextEntry()) != null) {
+                    if (!ze.isDirectory()) consumer.accept(ze.getName(), zip);
+                }
+                break;
+            case TAR:
+            case TAR_GZ:
+                TarArchiveInputStream tar = new TarArchiveInputStream(format == Format.TAR_GZ ? new GZIPInputStream(in) : in);
+                TarArchiveEntry te;
+                while ((te = tar.getNextTarEntry()) != null) {
+                    if (te.isFile()) consumer.accept(te.getName(), tar);
+                }
+                break;
+            default:
+                consumer.accept(name, in);
+        }
+    }
+}
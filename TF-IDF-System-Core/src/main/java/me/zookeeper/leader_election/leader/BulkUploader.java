@@ -0,0 +1,497 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.WorkerNode;
+import jakarta.annotation.PreDestroy;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Splits a stream of documents into batches and streams each batch to a shard
+ * as one zip body on {@code /worker/upload-batch}, to every replica of the shard
+ * at once. Entries are copied straight from the incoming stream to the outgoing
+ * requests, so the leader never holds a whole file. Each entry goes to the shard
+ * a router picks for it (see {@link DocumentPlacement}) or, without one, each
+ * batch goes to the shard with the fewest documents: the largest {@code docCount}
+ * its replicas publish in the registry, plus what the leader has sent them since
+ * they last published it. No worker is asked anything.
+ */
+@Component
+public class BulkUploader {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkUploader.class);
+
+    /** Receives one document; the stream is only valid during the call. */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String name, InputStream content) throws IOException;
+    }
+
+    /** Produces the documents of one bulk request. */
+    @FunctionalInterface
+    public interface EntrySource {
+        void forEach(EntryConsumer consumer) throws IOException;
+    }
+
+    // documents sent to a worker since the registry entry it was counted from (by its updatedAt)
+    private record Pending(long updatedAt, long docs) {}
+
+    private final RestTemplate restTemplate;
+    private final ServiceRegistry serviceRegistry;
+    private final DocumentLocator locator;
+    private final int batchMaxDocs;
+    private final long batchMaxBytes;
+    private final ExecutorService senders;
+    private final Map<String, Pending> sentSince = new ConcurrentHashMap<>();
+
+    public BulkUploader(RestTemplate restTemplate,
+                        ServiceRegistry serviceRegistry,
+                        DocumentLocator locator,
+                        @Value("${bulk.batch-max-docs:500}") int batchMaxDocs,
+                        @Value("${bulk.batch-max-bytes:67108864}") long batchMaxBytes) {
+        this.restTemplate = restTemplate;
+        this.serviceRegistry = serviceRegistry;
+        this.locator = locator;
+        this.batchMaxDocs = batchMaxDocs;
+        this.batchMaxBytes = batchMaxBytes;
+        AtomicInteger n = new AtomicInteger();
+        this.senders = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "bulk-sender-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Documents held by every shard with at least one registered replica: the
+     * largest count among its replicas, since every replica ends up holding the
+     * same documents. Unregistered replicas are left out of the returned shards.
+     */
+    public Map<Shard, Long> shardLoads(List<Shard> shards) {
+        Map<String, WorkerNode> nodes = serviceRegistry.getNodes();
+        Map<Shard, Long> load = new LinkedHashMap<>();
+        if (nodes == null) {
+            return load;
+        }
+        for (Shard shard : shards) {
+            List<String> registered = new ArrayList<>();
+            long max = 0;
+            for (String w : shard.replicas()) {
+                WorkerNode node = nodes.get(w);
+                if (node != null) {
+                    registered.add(w);
+                    max = Math.max(max, Math.max(0, node.getDocCount()) + unpublished(w, node.getUpdatedAt()));
+                }
+            }
+            if (!registered.isEmpty()) {
+                load.put(new Shard(shard.id(), registered), max);
+            }
+        }
+        return load;
+    }
+
+    /** Counts documents sent to (negative: taken from) a shard until its replicas next publish their docCount. */
+    public void sent(Shard shard, long docs) {
+        Map<String, WorkerNode> nodes = serviceRegistry.getNodes();
+        for (String w : shard.replicas()) {
+            WorkerNode node = nodes == null ? null : nodes.get(w);
+            long updatedAt = node == null ? 0 : node.getUpdatedAt();
+            sentSince.merge(w, new Pending(updatedAt, docs), (old, add) ->
+                    old.updatedAt() == add.updatedAt() ? new Pending(add.updatedAt(), old.docs() + add.docs()) : add);
+        }
+    }
+
+    // a newer registry entry already counts what was sent before it (near enough: the worker may not have refreshed yet)
+    private long unpublished(String worker, long updatedAt) {
+        Pending p = sentSince.get(worker);
+        return p != null && p.updatedAt() == updatedAt ? p.docs() : 0;
+    }
+
+    /** Path -> content hash of up to {@code limit} documents of a worker, from {@code /worker/documents}. */
+    public Map<String, String> documents(String worker, int limit) {
+        Map<String, String> docs = new LinkedHashMap<>();
+        restTemplate.execute(worker + "/worker/documents", HttpMethod.GET, null, response -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while (docs.size() < limit && (line = in.readLine()) != null) {
+                    int tab = line.lastIndexOf('\t');
+                    if (tab > 0) docs.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            return null;
+        });
+        return docs;
+    }
+
+    /** These documents of a worker, each streamed from its {@code /worker/download} as it is consumed. */
+    public EntrySource fromWorker(String worker, Collection<String> paths) {
+        return consumer -> {
+            for (String path : paths) {
+                URI uri = UriComponentsBuilder.fromUriString(worker).path("/worker/download")
+                        .queryParam("path", path).encode().build().toUri();
+                restTemplate.execute(uri, HttpMethod.GET, null, response -> {
+                    consumer.accept(path, response.getBody());
+                    return null;
+                });
+            }
+        };
+    }
+
+    /**
+     * Runs a write on every replica of a shard in parallel and waits for all of
+     * them, however long they take (unlike a search fan-out there is no deadline:
+     * a slow replica is still a replica that will have the document). Returns the
+     * replicas that succeeded; failures are logged.
+     */
+    public <T> Map<String, T> writeToReplicas(Shard shard, Function<String, T> write) {
+        Map<String, CompletableFuture<T>> pending = new LinkedHashMap<>();
+        for (String w : shard.replicas()) {
+            pending.put(w, CompletableFuture.supplyAsync(() -> write.apply(w), senders));
+        }
+        Map<String, T> done = new LinkedHashMap<>();
+        pending.forEach((w, f) -> {
+            try {
+                done.put(w, f.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                log.warn("Write to replica {} of shard {} failed: {}", w, shard.id(), ex.getCause().getMessage());
+            }
+        });
+        return done;
+    }
+
+    /** Least-loaded placement: each batch goes to the shard with the least data so far. */
+    public BulkUploadSummary upload(List<Shard> shards, EntrySource source, String durability) throws IOException {
+        return upload(shards, source, durability, null);
+    }
+
+    /**
+     * With a router every entry goes to the shard it names (one open batch per
+     * shard); without one, batches fill up one at a time on the least-loaded shard.
+     */
+    public BulkUploadSummary upload(List<Shard> shards, EntrySource source, String durability,
+                                    Function<String, Shard> router) throws IOException {
+        BulkUploadSummary summary = new BulkUploadSummary();
+        // routed uploads do not need the loads, only the shards' replicas
+        Map<Shard, Long> load = new HashMap<>();
+        if (router == null) {
+            load.putAll(shardLoads(shards));
+            if (load.isEmpty()) {
+                summary.addFailure("No registered workers to place the documents on");
+                return summary;
+            }
+        }
+
+        List<BatchSender> batches = new ArrayList<>();
+        Map<String, BatchSender> open = new HashMap<>();
+        Set<String> failedShards = new HashSet<>();
+        Shard[] last = new Shard[1];
+        try {
+            source.forEach((name, content) -> {
+                Shard target;
+                if (router != null) {
+                    target = router.apply(name);
+                } else {
+                    // stay on the current batch until it is full, then move to the least-loaded shard
+                    BatchSender current = last[0] == null ? null : open.get(last[0].id());
+                    if (current != null && !current.isFull() && !current.isDone()) {
+                        target = last[0];
+                    } else {
+                        if (current != null) close(current, open, failedShards, load);
+                        target = load.isEmpty() ? null : Collections.min(load.entrySet(), Map.Entry.comparingByValue()).getKey();
+                    }
+                }
+                if (target == null || failedShards.contains(target.id())) {
+                    summary.addFailure(name + ": no worker accepted the batch");
+                    return;
+                }
+
+                BatchSender batch = open.get(target.id());
+                if (batch != null && (batch.isFull() || batch.isDone()) && !close(batch, open, failedShards, load)) {
+                    summary.addFailure(name + ": no worker accepted the batch");
+                    return;
+                }
+                batch = open.get(target.id());
+                if (batch == null) {
+                    batch = new BatchSender(target, durability);
+                    batches.add(batch);
+                    open.put(target.id(), batch);
+                    last[0] = target;
+                }
+                try {
+                    batch.send(name, content);
+                    load.computeIfPresent(batch.shard, (sh, l) -> l + 1);
+                    sent(batch.shard, 1);
+                } catch (IOException e) {
+                    summary.addFailure(name + ": " + e.getMessage());
+                }
+            });
+        } finally {
+            open.values().forEach(BatchSender::finish);
+        }
+
+        for (BatchSender batch : batches) {
+            batch.collect(summary);
+        }
+        log.info("Bulk upload finished: {}", summary);
+        return summary;
+    }
+
+    // ends a batch; false if it had already failed on every replica, in which case its shard is out for this upload
+    private static boolean close(BatchSender batch, Map<String, BatchSender> open, Set<String> failedShards,
+                                 Map<Shard, Long> load) {
+        batch.finish();
+        open.remove(batch.shard.id());
+        if (batch.isDone() && !batch.isFull()) {
+            failedShards.add(batch.shard.id());
+            load.remove(batch.shard);
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * One streaming request per replica of a shard. Each request thread hands
+     * its zip body over and waits until the batch is finished; the caller then
+     * reads every entry once and writes it to all replicas, so the source stream
+     * is read by exactly one thread. A replica whose write fails is dropped from
+     * the rest of the batch; the others carry on.
+     */
+    private final class BatchSender {
+        private final Shard shard;
+        private final List<ReplicaRequest> replicas = new ArrayList<>();
+        private final List<String> sent = new ArrayList<>();
+        private final byte[] buffer = new byte[64 * 1024];
+        private long bytes;
+
+        BatchSender(Shard shard, String durability) {
+            this.shard = shard;
+            for (String w : shard.replicas()) {
+                replicas.add(new ReplicaRequest(w, durability));
+            }
+        }
+
+        boolean isFull() {
+            return sent.size() >= batchMaxDocs || bytes >= batchMaxBytes;
+        }
+
+        boolean isDone() {
+            return replicas.stream().allMatch(ReplicaRequest::isDone);
+        }
+
+        long send(String name, InputStream content) throws IOException {
+            List<ReplicaRequest> open = new ArrayList<>();
+            for (ReplicaRequest r : replicas) {
+                if (r.open()) {
+                    open.add(r);
+                }
+            }
+            if (open.isEmpty()) {
+                throw new IOException("batch to shard " + shard.id() + " is closed");
+            }
+            for (ReplicaRequest r : open) {
+                r.putNextEntry(name);
+            }
+            long n = 0;
+            int read;
+            while ((read = content.read(buffer)) > 0) {
+                for (ReplicaRequest r : open) {
+                    r.write(buffer, read);
+                }
+                n += read;
+            }
+            boolean any = false;
+            for (ReplicaRequest r : open) {
+                any |= r.closeEntry();
+            }
+            if (!any) {
+                throw new IOException("batch to shard " + shard.id() + " failed on every replica");
+            }
+            sent.add(name);
+            bytes += n;
+            return n;
+        }
+
+        void finish() {
+            replicas.forEach(ReplicaRequest::finish);
+        }
+
+        // the first replica that acknowledged counts the documents; the others only add their own failures
+        void collect(BulkUploadSummary summary) {
+            boolean counted = false;
+            List<String> lagging = new ArrayList<>();
+            for (ReplicaRequest r : replicas) {
+                BulkUploadSummary result = r.result();
+                if (result == null) {
+                    lagging.add(r.worker);
+                    continue;
+                }
+                if (!counted) {
+                    summary.merge(r.worker, result);
+                    counted = true;
+                } else {
+                    summary.mergeReplica(r.worker, result);
+                }
+                for (String name : sent) {
+                    locator.record(name, r.worker);
+                }
+            }
+            if (!counted) {
+                for (String name : sent) {
+                    summary.addFailure(name + " -> " + shard.id() + ": no replica acknowledged the batch");
+                }
+                return;
+            }
+            for (String worker : lagging) {
+                summary.addFailure(worker + ": replica missed a batch of " + sent.size() + " docs");
+            }
+        }
+
+        private final class ReplicaRequest {
+            private final String worker;
+            private final CompletableFuture<ZipOutputStream> body = new CompletableFuture<>();
+            private final CountDownLatch finished = new CountDownLatch(1);
+            private final CompletableFuture<BulkUploadSummary> result;
+            private volatile IOException aborted;
+
+            ReplicaRequest(String worker, String durability) {
+                this.worker = worker;
+                UriComponentsBuilder url = UriComponentsBuilder.fromUriString(worker).path("/worker/upload-batch");
+                if (durability != null) url.queryParam("durability", durability);
+                URI uri = url.build().toUri();
+
+                this.result = CompletableFuture.supplyAsync(() -> {
+                    ResponseEntity<BulkUploadSummary> r = restTemplate.execute(uri, HttpMethod.POST, request -> {
+                        request.getHeaders().setContentType(MediaType.parseMediaType("application/zip"));
+                        if (request instanceof StreamingHttpOutputMessage) {
+                            ((StreamingHttpOutputMessage) request).setBody(this::writeBody);
+                        } else {
+                            writeBody(request.getBody());
+                        }
+                    }, restTemplate.responseEntityExtractor(BulkUploadSummary.class));
+                    return r == null ? null : r.getBody();
+                }, senders);
+                // a request that never got to its body (connection refused) must not leave the caller waiting
+                result.whenComplete((r, e) -> body.completeExceptionally(
+                        e != null ? e : new IOException("request to " + worker + " ended early")));
+            }
+
+            // runs on the request thread: hands the body to the caller and keeps the request open until finish()
+            private void writeBody(OutputStream out) throws IOException {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                zip.setLevel(Deflater.BEST_SPEED);
+                body.complete(zip);
+                try {
+                    finished.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", ex);
+                }
+                if (aborted != null) {
+                    throw aborted;
+                }
+                zip.finish();
+            }
+
+            boolean isDone() {
+                return result.isDone() || aborted != null;
+            }
+
+            // waits for the body; false if this replica is out of the batch
+            boolean open() {
+                if (isDone()) {
+                    return false;
+                }
+                try {
+                    body.get();
+                    return aborted == null;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    abort(new IOException("Interrupted", ex));
+                    return false;
+                } catch (ExecutionException ex) {
+                    log.debug("Batch to {} ended before its body: {}", worker, ex.getCause().getMessage());
+                    return false;
+                }
+            }
+
+            void putNextEntry(String name) {
+                if (aborted == null) {
+                    try {
+                        body.join().putNextEntry(new ZipEntry(name));
+                    } catch (IOException e) {
+                        abort(e);
+                    }
+                }
+            }
+
+            void write(byte[] b, int len) {
+                if (aborted == null) {
+                    try {
+                        body.join().write(b, 0, len);
+                    } catch (IOException e) {
+                        abort(e);
+                    }
+                }
+            }
+
+            boolean closeEntry() {
+                if (aborted == null) {
+                    try {
+                        body.join().closeEntry();
+                    } catch (IOException e) {
+                        abort(e);
+                    }
+                }
+                return aborted == null;
+            }
+
+            private void abort(IOException e) {
+                log.warn("Dropping replica {} from batch to shard {}: {}", worker, shard.id(), e.getMessage());
+                aborted = e;
+                finished.countDown();
+            }
+
+            void finish() {
+                finished.countDown();
+            }
+
+            BulkUploadSummary result() {
+                try {
+                    return result.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    log.warn("Batch of {} docs to {} failed: {}", sent.size(), worker, ex.getCause().getMessage());
+                }
+                return null;
+            }
+        }
+    }
+}
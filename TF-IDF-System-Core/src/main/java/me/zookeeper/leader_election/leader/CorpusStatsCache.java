@@ -0,0 +1,106 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.CorpusStats;
+import Document_and_Data.FieldStats;
+import Document_and_Data.TermStats;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Short-lived cache of corpus-wide term and field statistics, so the extra
+ * statistics round-trip of a global-IDF search is only paid when a term has
+ * not been seen for a while. Entries are per term; a query is answered from
+ * the cache only when every one of its terms (and their fields) is fresh.
+ */
+@Component
+public class CorpusStatsCache {
+
+    private final Cache<String, TermStats> terms;
+    private final Cache<String, FieldStats> fields;
+    // query text -> the analysed terms it produced last time ("field\0text")
+    private final Cache<String, List<String>> queryTerms;
+
+    public CorpusStatsCache(@Value("${search.global-stats.ttl-ms:30000}") long ttlMs,
+                            @Value("${search.global-stats.max-terms:100000}") long maxTerms) {
+        Duration ttl = Duration.ofMillis(ttlMs);
+        this.terms = Caffeine.newBuilder().expireAfterWrite(ttl).maximumSize(maxTerms).build();
+        this.fields = Caffeine.newBuilder().expireAfterWrite(ttl).build();
+        this.queryTerms = Caffeine.newBuilder().maximumSize(maxTerms).build();
+    }
+
+    /** Cached statistics for every term of the query, or null if any of them is missing or expired. */
+    public CorpusStats get(String query) {
+        List<String> keys = queryTerms.getIfPresent(query);
+        if (keys == null) {
+            return null;
+        }
+        CorpusStats stats = new CorpusStats();
+        Set<String> seenFields = new HashSet<>();
+        for (String key : keys) {
+            TermStats t = terms.getIfPresent(key);
+            if (t == null) {
+                return null;
+            }
+            stats.getTerms().add(t);
+            if (seenFields.add(t.getField())) {
+                FieldStats f = fields.getIfPresent(t.getField());
+                if (f == null) {
+                    return null;
+                }
+                stats.getFields().add(f);
+            }
+        }
+        return stats;
+    }
+
+    public void put(String query, CorpusStats stats) {
+        List<String> keys = new ArrayList<>(stats.getTerms().size());
+        for (TermStats t : stats.getTerms()) {
+            String key = key(t);
+            terms.put(key, t);
+            keys.add(key);
+        }
+        for (FieldStats f : stats.getFields()) {
+            fields.put(f.getField(), f);
+        }
+        queryTerms.put(query, keys);
+    }
+
+    public void invalidateAll() {
+        terms.invalidateAll();
+        fields.invalidateAll();
+    }
+
+    /** Sums per-shard statistics into corpus-wide ones. */
+    public static CorpusStats merge(Collection<CorpusStats> shards) {
+        Map<String, TermStats> termTotals = new LinkedHashMap<>();
+        Map<String, FieldStats> fieldTotals = new LinkedHashMap<>();
+        for (CorpusStats shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            for (TermStats t : shard.getTerms()) {
+                TermStats total = termTotals.computeIfAbsent(key(t), k -> new TermStats(t.getField(), t.getText(), 0, 0));
+                total.setDocFreq(total.getDocFreq() + t.getDocFreq());
+                total.setTotalTermFreq(total.getTotalTermFreq() + t.getTotalTermFreq());
+            }
+            for (FieldStats f : shard.getFields()) {
+                FieldStats total = fieldTotals.computeIfAbsent(f.getField(), k -> new FieldStats(k, 0, 0, 0, 0));
+                total.setMaxDoc(total.getMaxDoc() + f.getMaxDoc());
+                total.setDocCount(total.getDocCount() + f.getDocCount());
+                total.setSumTotalTermFreq(total.getSumTotalTermFreq() + f.getSumTotalTermFreq());
+                total.setSumDocFreq(total.getSumDocFreq() + f.getSumDocFreq());
+            }
+        }
+        return new CorpusStats(new ArrayList<>(fieldTotals.values()), new ArrayList<>(termTotals.values()));
+    }
+
+    private static String key(TermStats t) {
+        return t.getField() + '\0' + t.getText();
+    }
+}
@@ -0,0 +1,55 @@
+package me.zookeeper.leader_election.leader;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ * Which worker holds which document (relative path -> worker address), so a
+ * download goes straight to the owner instead of probing every worker.
+ * Filled from uploads and from search hits; an entry can go stale when a
+ * worker leaves or a document moves, so callers fall back to probing and
+ * then {@link #record} the worker that answered.
+ */
+@Component
+public class DocumentLocator {
+
+    private final Cache<String, String> owners;
+
+    public DocumentLocator(@Value("${download.locator.max-entries:1000000}") long maxEntries) {
+        this.owners = Caffeine.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    /** The worker last seen holding this document, or null. */
+    public String locate(String path) {
+        return owners.getIfPresent(key(path));
+    }
+
+    public void record(String path, String worker) {
+        if (path != null && worker != null) {
+            owners.put(key(path), worker);
+        }
+    }
+
+    /** Drops the entry if it still points at this worker (it answered 404 or is gone). */
+    public void forget(String path, String worker) {
+        owners.asMap().remove(key(path), worker);
+    }
+
+    public long size() {
+        return owners.estimatedSize();
+    }
+
+    // same form the worker stores in its "path" field
+    static String key(String path) {
+        try {
+            return Paths.get(path).normalize().toString();
+        } catch (InvalidPathException e) {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package me.zookeeper.leader_election.leader;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Decides which shard a document belongs to. {@code placement.strategy=least-loaded}
+ * (the default) picks the shard whose replicas publish the fewest documents; the
+ * {@link Rebalancer} evens the shards out when they grow apart, moving only as
+ * many documents as that takes. With {@code hash} the owner is a pure
+ * function of the relative path and the set of shard groups, through a
+ * {@link HashRing}: any node can compute where a path lives, but switching an
+ * existing cluster to it moves most of the corpus to its ring owners, so it has
+ * to be asked for.
+ */
+@Component
+public class DocumentPlacement {
+
+    private final boolean hashed;
+    private final int virtualNodes;
+    // rebuilt only when the set of shard ids changes
+    private volatile HashRing ring = new HashRing(List.of(), 1);
+
+    public DocumentPlacement(@Value("${placement.strategy:least-loaded}") String strategy,
+                             @Value("${placement.virtual-nodes:128}") int virtualNodes) {
+        switch (strategy.trim().toLowerCase()) {
+            case "hash" -> this.hashed = true;
+            case "least-loaded" -> this.hashed = false;
+            default -> throw new IllegalArgumentException("placement.strategy must be hash or least-loaded, not " + strategy);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    public boolean isHashed() {
+        return hashed;
+    }
+
+    public HashRing ring(List<Shard> shards) {
+        Set<String> ids = new TreeSet<>();
+        shards.forEach(s -> ids.add(s.id()));
+        HashRing current = ring;
+        if (!current.nodes().equals(ids)) {
+            current = new HashRing(ids, virtualNodes);
+            ring = current;
+        }
+        return current;
+    }
+
+    /** The shard this path belongs to, or null if there are no shards. */
+    public Shard owner(String path, List<Shard> shards) {
+        String id = ring(shards).owner(key(path));
+        for (Shard s : shards) {
+            if (s.id().equals(id)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    static String key(String path) {
+        return DocumentLocator.key(path);
+    }
+}
@@ -0,0 +1,130 @@
+package me.zookeeper.leader_election.leader;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Last known index generation of every worker, polled from {@code /worker/generation}
+ * and updated from the {@code X-Index-Generation} header of search responses.
+ * A worker whose generation is unknown (just joined, failed its last poll, or
+ * was just written to through the leader) is always queried, never served
+ * from the result cache.
+ */
+@Component
+public class GenerationTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationTracker.class);
+
+    private final ServiceRegistry serviceRegistry;
+    private final ScatterGather scatterGather;
+    private final RestTemplate restTemplate;
+    private final long pollMs;
+    private final boolean enabled;
+    private final Map<String, String> generations = new ConcurrentHashMap<>();
+    private ScheduledExecutorService poller;
+
+    public GenerationTracker(ServiceRegistry serviceRegistry,
+                             ScatterGather scatterGather,
+                             @Qualifier("searchRestTemplate") RestTemplate restTemplate,
+                             @Value("${search.result-cache.generation-poll-ms:250}") long pollMs,
+                             @Value("${search.result-cache.enabled:true}") boolean enabled) {
+        this.serviceRegistry = serviceRegistry;
+        this.scatterGather = scatterGather;
+        this.restTemplate = restTemplate;
+        this.pollMs = pollMs;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "generation-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    void poll() {
+        try {
+            List<String> workers = serviceRegistry.getAllServiceAddresses();
+            if (workers == null || workers.isEmpty()) {
+                generations.clear();
+                return;
+            }
+            ScatterGather.Gathered<String> polled = scatterGather.gather(workers, w ->
+                    restTemplate.getForObject(w + "/worker/generation", String.class));
+            generations.keySet().retainAll(polled.getResults().keySet());
+            polled.getResults().forEach(this::observe);
+        } catch (Exception e) {
+            log.debug("Generation poll failed: {}", e.getMessage());
+        }
+    }
+
+    /** Known generations of these workers; workers without one are left out. */
+    public Map<String, String> current(List<String> workers) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String w : workers) {
+            String g = generations.get(w);
+            if (g != null) {
+                result.put(w, g);
+            }
+        }
+        return result;
+    }
+
+    public void observe(String worker, String generation) {
+        if (generation != null) {
+            generations.put(worker, generation);
+        }
+    }
+
+    /** The worker has changed (e.g. an upload went through the leader); query it until the next poll. */
+    public void forget(String worker) {
+        generations.remove(worker);
+    }
+
+    public void forgetAll() {
+        generations.clear();
+    }
+
+    /**
+     * One token for the generations of all workers, or null if any is unknown.
+     * Corpus-wide statistics depend on every shard, so hits scored with them are
+     * only reusable while this whole vector is unchanged.
+     */
+    public static String vector(List<String> workers, Map<String, String> generations) {
+        StringBuilder sb = new StringBuilder();
+        for (String w : new TreeSet<>(workers)) {
+            String g = generations.get(w);
+            if (g == null) {
+                return null;
+            }
+            sb.append(w).append('=').append(g).append(';');
+        }
+        return sb.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package me.zookeeper.leader_election.leader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent hash ring with virtual nodes. Every node is placed on the ring at
+ * {@code virtualNodes} points; a key belongs to the first point at or after its
+ * own hash. Adding or removing a node only moves the keys of the ring segments
+ * it gains or loses (about 1/n of them), and the owner of a key is computed
+ * without asking anyone. Immutable; build a new ring when the nodes change.
+ */
+public final class HashRing {
+
+    private final long[] points;
+    private final String[] owners;
+    private final Set<String> nodes;
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be > 0");
+        }
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        List<Map.Entry<Long, String>> ring = new ArrayList<>(this.nodes.size() * virtualNodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.add(Map.entry(hash(node + "#" + i), node));
+            }
+        }
+        // equal points (practically never) are broken by node name, so every ring built from the same nodes agrees
+        ring.sort(Map.Entry.<Long, String>comparingByKey().thenComparing(Map.Entry.comparingByValue()));
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        for (int i = 0; i < ring.size(); i++) {
+            points[i] = ring.get(i).getKey();
+            owners[i] = ring.get(i).getValue();
+        }
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    /** The node owning this key, or null on an empty ring. */
+    public String owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    // 64-bit FNV-1a, finished with MurmurHash3's fmix64 so similar keys land far apart
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
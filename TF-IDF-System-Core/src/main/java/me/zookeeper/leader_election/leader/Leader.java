@@ -1,26 +1,48 @@
 package me.zookeeper.leader_election.leader;
 
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.CorpusStats;
 import Document_and_Data.DocumentScoreInfo;
+import Document_and_Data.SearchRequest;
+import Document_and_Data.SearchResponse;
+import Document_and_Data.TermScore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import me.zookeeper.leader_election.config.PhaseTimers;
 import me.zookeeper.leader_election.registry.ServiceRegistry;
+import me.zookeeper.leader_election.worker.QueryLanguage;
+import me.zookeeper.leader_election.worker.Worker;
+import me.zookeeper.leader_election.worker.Similarities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
@@ -28,73 +50,273 @@ import java.util.stream.Collectors;
 public class Leader {
 
     private static final Logger log = LoggerFactory.getLogger(Leader.class);
+    // searches over search.slow-query-ms, with their phases and per-worker latencies
+    private static final Logger slowQueries = LoggerFactory.getLogger("slow-query");
+
+    static final String PARTIAL_HEADER = "X-Partial-Results";
+    static final String MISSING_SHARDS_HEADER = "X-Missing-Shards";
 
     @Autowired
     private ServiceRegistry serviceRegistry;
 
+    @Autowired
+    private ScatterGather scatterGather;
+
+    @Autowired
+    private CorpusStatsCache corpusStatsCache;
+
+    @Autowired
+    private BulkUploader bulkUploader;
+
+    @Autowired
+    private DocumentLocator documentLocator;
+
+    @Autowired
+    private GenerationTracker generationTracker;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private ShardGroupManager shardGroupManager;
+
+    @Autowired
+    private DocumentPlacement placement;
+
+    @Autowired
+    private Rebalancer rebalancer;
+
+    @Autowired
+    private WorkerHealth health;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("searchRestTemplate")
+    private RestTemplate searchRestTemplate;
+
+    // download headers passed to the worker and back, so resumes and conditional GETs work end to end
+    private static final List<String> FORWARDED_REQUEST_HEADERS = List.of(HttpHeaders.RANGE, HttpHeaders.IF_RANGE,
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
+    private static final List<String> RELAYED_RESPONSE_HEADERS = List.of(HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.CONTENT_DISPOSITION, HttpHeaders.CONTENT_RANGE,
+            HttpHeaders.ACCEPT_RANGES, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED);
+    // not-modified / precondition-failed / range-not-satisfiable: the worker has the file, pass the answer on
+    private static final Set<Integer> RELAYED_ERRORS = Set.of(304, 412, 416);
+
     @Value("${mydocument.path:/app/documents}")
     private String docRoot;
 
+    // upper bound on k + offset, which is also the per-shard result size
+    @Value("${search.max-results:1000}")
+    private int maxResults;
+
+    @Value("${search.global-stats.enabled:true}")
+    private boolean globalStatsByDefault;
+
+    // the workers' query guardrails, checked here first so a bad query is not sent to every shard
+    @Value("${search.query.max-clauses:1024}")
+    private int queryMaxClauses;
+
+    @Value("${search.query.max-expansions:50}")
+    private int queryMaxExpansions;
+
+    // 0 turns the slow-query log off
+    @Value("${search.slow-query-ms:500}")
+    private long slowQueryMs;
+
+    // answer a download with a redirect to the owning worker instead of proxying the bytes
+    @Value("${download.redirect:false}")
+    private boolean redirectDownloads;
+
+    // search metrics: total latency by outcome, time per phase, result sizes
+    private Timer completeSearches;
+    private Timer partialSearches;
+    private Counter partialResults;
+    private DistributionSummary resultSize;
+    private PhaseTimers searchPhases;
+
+    @PostConstruct
+    public void initMetrics() {
+        completeSearches = Timer.builder("tfidf.leader.search").tag("partial", "false").register(meterRegistry);
+        partialSearches = Timer.builder("tfidf.leader.search").tag("partial", "true").register(meterRegistry);
+        partialResults = Counter.builder("tfidf.leader.search.partial")
+                .description("Searches answered without every shard").register(meterRegistry);
+        resultSize = DistributionSummary.builder("tfidf.leader.search.hits")
+                .description("Hits on the returned page").register(meterRegistry);
+        // cache (result cache lookups), stats (phase one), scatter (phase two), merge
+        searchPhases = new PhaseTimers(meterRegistry, "tfidf.leader.search.phase");
+    }
+
     /* -------------------- SEARCH -------------------- */
     @PostMapping("/start")
-    public TreeMap<String, Double> start(@RequestBody String searchQuery) {
-        log.info("Leader received search query: \"{}\"", searchQuery);
-        RestTemplate rt = new RestTemplate();
+    public ResponseEntity<SearchResponse> start(@RequestBody String searchQuery,
+                                                @RequestParam(defaultValue = "10") int k,
+                                                @RequestParam(defaultValue = "0") int offset,
+                                                @RequestParam(required = false) Boolean globalStats,
+                                                @RequestParam(required = false) String similarity,
+                                                @RequestParam(required = false) Float k1,
+                                                @RequestParam(required = false) Float b,
+                                                @RequestParam(required = false) String syntax) {
+        log.debug("Leader received {} search query: \"{}\" (k={}, offset={})", syntax, searchQuery, k, offset);
+        if (k <= 0 || offset < 0 || k + offset > maxResults) {
+            log.warn("Rejecting query with k={} offset={} (limit {})", k, offset, maxResults);
+            return ResponseEntity.badRequest().build();
+        }
+        // a search that names a similarity gets it on every shard, or merged scores would not be comparable;
+        // one that does not (null) is scored by each index's own search.similarity
+        String scoring = null;
+        try {
+            if (similarity != null || k1 != null || b != null) {
+                scoring = Similarities.spec(similarity != null ? similarity : "bm25", k1, b);
+            }
+            syntax = QueryLanguage.syntax(syntax);
+            QueryLanguage.validate(syntax, searchQuery, queryMaxClauses, queryMaxExpansions);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejecting query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
 
-        List<String> workers = serviceRegistry.getAllServiceAddresses();
-        if (workers == null || workers.isEmpty()) {
+        PhaseTimers.Laps laps = searchPhases.start();
+        // one replica per shard group answers for the whole group
+        List<Shard> shards = shardGroupManager.readableShards();
+        if (shards.isEmpty()) {
             log.warn("No workers available");
-            return new TreeMap<>();
+            return ResponseEntity.ok(new SearchResponse(new ArrayList<>(), k, offset));
         }
+        List<String> workers = new ArrayList<>();
+        shards.forEach(s -> workers.addAll(s.replicas()));
 
-        List<DocumentScoreInfo> allResults = new ArrayList<>();
-        for (String w : workers) {
-            log.info("Dispatching query to worker {}", w);
-            try {
-                List<DocumentScoreInfo> resp = rt.exchange(
-                        w + "/worker/process",
-                        HttpMethod.POST,
-                        new HttpEntity<>(searchQuery),
-                        new ParameterizedTypeReference<List<DocumentScoreInfo>>() {}
-                ).getBody();
+        // shards whose index has not changed since they last answered this query are served from the cache
+        boolean useGlobalStats = (globalStats != null ? globalStats : globalStatsByDefault) && shards.size() > 1;
+        String normalized = ResultCache.normalize(syntax, searchQuery);
+        int shardK = k + offset;
+        Map<String, String> generations = generationTracker.current(workers);
+        String statsVersion = useGlobalStats ? GenerationTracker.vector(workers, generations) : "";
+        Map<String, List<DocumentScoreInfo>> shardHits = new LinkedHashMap<>();
+        List<Shard> toQuery = new ArrayList<>();
+        for (Shard shard : shards) {
+            List<DocumentScoreInfo> cached = null;
+            for (String w : shard.replicas()) {
+                cached = resultCache.get(w, generations.get(w), normalized, scoring, shardK, statsVersion);
+                if (cached != null) {
+                    shardHits.put(w, cached);
+                    break;
+                }
+            }
+            if (cached == null) {
+                toQuery.add(shard);
+            }
+        }
+        if (!shardHits.isEmpty()) {
+            log.debug("Serving {} of {} shards from the result cache", shardHits.size(), shards.size());
+        }
+        laps.lap("cache");
 
+        Set<String> missing = new LinkedHashSet<>();
+        Map<String, Long> workerNanos = Map.of();
+        if (!toQuery.isEmpty()) {
+            // phase one: corpus-wide statistics, so every shard scores with the same IDF
+            CorpusStats stats = null;
+            // only hits scored with statistics gathered just now are known to match the generation vector
+            boolean statsCurrent = false;
+            if (useGlobalStats) {
+                stats = corpusStatsCache.get(normalized);
+                if (stats == null) {
+                    // one replica per shard, or the group's documents would count once per replica
+                    String termStatsPath = "/worker/term-stats?syntax=" + syntax;
+                    ScatterGather.Gathered<CorpusStats> shardStats = scatterGather.gatherShards(shards, w ->
+                            searchRestTemplate.postForObject(w + termStatsPath, searchQuery, CorpusStats.class));
+                    stats = CorpusStatsCache.merge(shardStats.getResults().values());
+                    // statistics missing a shard are still usable for this query, but not worth caching
+                    statsCurrent = !shardStats.isPartial();
+                    if (statsCurrent) {
+                        corpusStatsCache.put(normalized, stats);
+                    }
+                    log.debug("Gathered corpus statistics: {}", stats);
+                }
+                laps.lap("stats");
+            }
+
+            // phase two: every shard has to return its own best k + offset for the global page to be exact
+            SearchRequest request = new SearchRequest(searchQuery, shardK, stats);
+            request.setSimilarity(scoring);
+            request.setSyntax(syntax);
+            log.debug("Dispatching query to {} shards (top {} per shard)", toQuery.size(), request.getK());
+            ScatterGather.Gathered<ResponseEntity<List<DocumentScoreInfo>>> gathered = scatterGather.gatherShards(toQuery, w ->
+                    searchRestTemplate.exchange(
+                            w + "/worker/process",
+                            HttpMethod.POST,
+                            new HttpEntity<>(request),
+                            new ParameterizedTypeReference<List<DocumentScoreInfo>>() {}
+                    ));
+            missing.addAll(gathered.getMissing());
+            workerNanos = gathered.getElapsedNanos();
+            laps.lap("scatter");
+
+            for (Map.Entry<String, ResponseEntity<List<DocumentScoreInfo>>> e : gathered.getResults().entrySet()) {
+                String w = e.getKey();
+                List<DocumentScoreInfo> resp = e.getValue().getBody();
                 if (resp == null) {
                     log.warn("Worker {} returned null", w);
                     continue;
                 }
-                log.info("Worker {} returned {} hits", w, resp.size());
-                allResults.addAll(resp);
-            } catch (Exception ex) {
-                log.warn("Worker {} search call failed: {}", w, ex.getMessage());
+                shardHits.put(w, resp);
+                String generation = e.getValue().getHeaders().getFirst(Worker.GENERATION_HEADER);
+                generationTracker.observe(w, generation);
+                // with global statistics the hits are only reusable under the generation vector they were scored with
+                if (!useGlobalStats) {
+                    resultCache.put(w, generation, normalized, scoring, shardK, "", resp);
+                } else if (statsCurrent && generation != null && generation.equals(generations.get(w))) {
+                    resultCache.put(w, generation, normalized, scoring, shardK, statsVersion, resp);
+                }
             }
         }
 
-        log.info("Merging {} total hits from all workers", allResults.size());
-        Map<String, Double> merged = new HashMap<>();
-        for (DocumentScoreInfo info : allResults) {
-            String name = info.getDocument().getName();   // should be RELATIVE now
-            merged.merge(name, info.getScore(), Double::sum);
-        }
+        TopKMerger merger = new TopKMerger(k, offset);
+        shardHits.forEach((w, resp) -> {
+            log.debug("Worker {} returned {} hits", w, resp.size());
+            merger.addAll(resp);
+            for (DocumentScoreInfo hit : resp) {
+                documentLocator.record(hit.getDocument().getName(), w);
+            }
+        });
 
-        log.info("Total distinct documents: {}", merged.size());
-        TreeMap<String, Double> sorted = merged.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByKey())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (a, b) -> a,
-                        TreeMap::new
-                ));
+        SearchResponse response = new SearchResponse(merger.page(), k, offset);
+        response.setSimilarity(scoring);
+        response.setPartial(!missing.isEmpty());
+        response.setMissingShards(new ArrayList<>(missing));
+        laps.lap("merge");
 
-        log.info("Returning final response with {} entries", sorted.size());
-        return sorted;
+        long nanos = laps.elapsedNanos();
+        (response.isPartial() ? partialSearches : completeSearches).record(nanos, TimeUnit.NANOSECONDS);
+        if (response.isPartial()) {
+            partialResults.increment();
+        }
+        resultSize.record(response.getHits().size());
+        if (slowQueryMs > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(slowQueryMs)) {
+            slowQueries.warn("{} ms \"{}\" k={} offset={} shards={} partial={} | {} | workers {}",
+                    String.format("%.1f", nanos / 1e6), searchQuery, k, offset, shards.size(), response.isPartial(),
+                    laps.breakdown(), workerNanos.entrySet().stream()
+                            .map(e -> e.getKey() + "=" + String.format("%.1f ms", e.getValue() / 1e6))
+                            .collect(Collectors.joining(" ")));
+        }
+        log.debug("Returning final response with {} entries (partial={})", response.getHits().size(), response.isPartial());
+        return ResponseEntity.ok()
+                .header(PARTIAL_HEADER, String.valueOf(response.isPartial()))
+                .header(MISSING_SHARDS_HEADER, String.join(",", missing))
+                .body(response);
     }
 
     /* -------------------- DOWNLOAD -------------------- */
     @GetMapping("/download")
-    public ResponseEntity<Resource> leaderDownload(@RequestParam String path) throws IOException {
-        log.info("Download requested for path='{}'", path);
+    public ResponseEntity<?> leaderDownload(@RequestParam String path,
+                                            @RequestHeader HttpHeaders requestHeaders) throws IOException {
+        log.debug("Download requested for path='{}'", path);
 
         Path baseDir   = Paths.get(docRoot).normalize();
         Path requested = Paths.get(path).normalize();
@@ -110,39 +332,62 @@ public class Leader {
 
         // 1) try local disk
         Path localFile = baseDir.resolve(relative).normalize();
-        if (Files.exists(localFile)) {
-            log.info("Serving file '{}' from leader local disk", localFile);
+        if (localFile.startsWith(baseDir) && Files.isRegularFile(localFile)) {
+            log.debug("Serving file '{}' from leader local disk", localFile);
             Resource res = new FileSystemResource(localFile.toFile());
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION,
                             "attachment; filename=\"" + localFile.getFileName() + "\"")
                     .contentLength(res.contentLength())
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    // lets Spring answer Range (206) and If-Modified-Since (304) for local files
+                    .lastModified(res.lastModified())
                     .body(res);
-        } else {
-            log.debug("Leader does not have '{}', probing workers…", relative);
         }
 
-        // 2) ask workers
-        RestTemplate rt = new RestTemplate();
-        for (String w : serviceRegistry.getAllServiceAddresses()) {
-            // build url with queryParam (RestTemplate will handle encoding)
-            String url = UriComponentsBuilder.fromHttpUrl(w)
-                    .path("/worker/download")
-                    .queryParam("path", relative)
-                    .toUriString();
+        List<String> workers = serviceRegistry.getAllServiceAddresses();
+        if (workers == null || workers.isEmpty()) {
+            return ResponseEntity.status(503).build();
+        }
 
-            try {
-                ResponseEntity<Resource> r = rt.exchange(url, HttpMethod.GET, null, Resource.class);
-                if (r.getStatusCode().is2xxSuccessful() && r.getBody() != null) {
-                    log.info("File '{}' obtained from worker {}", relative, w);
-                    return r;
-                } else {
-                    log.debug("Worker {} responded {} (bodyPresent={}) for '{}'",
-                            w, r.getStatusCode(), r.getBody() != null, relative);
+        // 2) the worker it was uploaded to or last found on, unless its circuit is open
+        String owner = documentLocator.locate(relative);
+        boolean ownerDown = owner != null && !health.isAvailable(owner);
+        if (owner != null && workers.contains(owner) && !ownerDown) {
+            ResponseEntity<?> r = downloadFrom(owner, relative, requestHeaders);
+            if (r != null) {
+                return r;
+            }
+        }
+        if (owner != null && !ownerDown) {
+            log.debug("Location of '{}' on {} is stale", relative, owner);
+            documentLocator.forget(relative, owner);
+        }
+
+        // 3) where the hash ring places it (it may still be on its way there, so this can miss)
+        if (placement.isHashed()) {
+            Shard home = placement.owner(relative, shardGroupManager.placementShards());
+            if (home != null) {
+                for (String w : health.byLatency(home.replicas())) {
+                    if (w.equals(owner) || !health.isAvailable(w)) continue;
+                    ResponseEntity<?> r = downloadFrom(w, relative, requestHeaders);
+                    if (r != null) {
+                        documentLocator.record(relative, w);
+                        return r;
+                    }
                 }
-            } catch (Exception ex) {
-                log.debug("Worker {} threw {} for '{}'", w, ex.getMessage(), relative);
+            }
+        }
+
+        // 4) unknown or moved: ask every worker at once which one has it
+        log.debug("Leader does not know where '{}' is, probing workers…", relative);
+        ScatterGather.Gathered<HttpHeaders> probe = scatterGather.gather(workers, w ->
+                restTemplate.headForHeaders(workerDownloadUri(w, relative)));
+        for (String w : probe.getResults().keySet()) {
+            ResponseEntity<?> r = downloadFrom(w, relative, requestHeaders);
+            if (r != null) {
+                documentLocator.record(relative, w);
+                return r;
             }
         }
 
@@ -150,63 +395,242 @@ public class Leader {
         return ResponseEntity.notFound().build();
     }
 
-    @PostMapping("/upload")
-    public ResponseEntity<String> uploadToLeastLoadedWorker(@RequestParam("file") MultipartFile file) throws IOException {
-        if (file.isEmpty()) return ResponseEntity.badRequest().body("Empty file");
+    /**
+     * Redirects to the worker, or relays its response as it arrives: the leader
+     * only ever holds one buffer of the file. Range and conditional headers are passed
+     * through, so 206 / 304 / 416 come back from the worker as is.
+     * Returns null if the worker does not have it.
+     */
+    private ResponseEntity<?> downloadFrom(String worker, String relative, HttpHeaders requestHeaders) {
+        URI uri = workerDownloadUri(worker, relative);
+        if (redirectDownloads) {
+            log.debug("Redirecting download of '{}' to {}", relative, worker);
+            return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT).location(uri).build();
+        }
 
-        String filename = file.getOriginalFilename();
-        log.info("Leader received upload for '{}', size={} bytes", filename, file.getSize());
+        ClientHttpResponse upstream;
+        HttpStatusCode status;
+        try {
+            ClientHttpRequest request = restTemplate.getRequestFactory().createRequest(uri, HttpMethod.GET);
+            for (String name : FORWARDED_REQUEST_HEADERS) {
+                List<String> values = requestHeaders.get(name);
+                if (values != null) {
+                    request.getHeaders().put(name, values);
+                }
+            }
+            upstream = request.execute();
+            status = upstream.getStatusCode();
+        } catch (IOException ex) {
+            health.recordOutcome(worker, false);
+            log.debug("Worker {} threw {} for '{}'", worker, ex.getMessage(), relative);
+            return null;
+        }
+        health.recordOutcome(worker, !status.is5xxServerError());
+        if (!status.is2xxSuccessful() && !RELAYED_ERRORS.contains(status.value())) {
+            log.debug("Worker {} responded {} for '{}'", worker, status, relative);
+            upstream.close();
+            return null;
+        }
 
-        byte[] bytes = file.getBytes();
+        HttpHeaders headers = new HttpHeaders();
+        for (String name : RELAYED_RESPONSE_HEADERS) {
+            List<String> values = upstream.getHeaders().get(name);
+            if (values != null) {
+                headers.put(name, values);
+            }
+        }
+        if (!status.is2xxSuccessful()) {
+            log.debug("Worker {} answered {} for '{}'", worker, status, relative);
+            upstream.close();
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+
+        log.debug("Streaming '{}' from worker {} ({})", relative, worker, status);
+        StreamingResponseBody body = out -> {
+            try (upstream; InputStream in = upstream.getBody()) {
+                in.transferTo(out);
+            }
+        };
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
 
-        RestTemplate rt = new RestTemplate();
+    /* -------------------- TOP TERMS -------------------- */
+    // a document's highest TF-IDF terms from its stored term vector, asked of the worker that holds it
+    @GetMapping("/top-terms")
+    public ResponseEntity<List<TermScore>> topTerms(@RequestParam String path, @RequestParam(defaultValue = "20") int k) {
         List<String> workers = serviceRegistry.getAllServiceAddresses();
         if (workers == null || workers.isEmpty()) {
-            return ResponseEntity.status(503).body("No workers available");
+            return ResponseEntity.status(503).build();
+        }
+        // where it was last seen, where the ring places it, then everyone
+        Set<String> candidates = new LinkedHashSet<>();
+        String owner = documentLocator.locate(path);
+        if (owner != null && workers.contains(owner)) {
+            candidates.add(owner);
         }
+        if (placement.isHashed()) {
+            Shard home = placement.owner(path, shardGroupManager.placementShards());
+            if (home != null) {
+                candidates.addAll(health.byLatency(home.replicas()));
+            }
+        }
+        candidates.addAll(workers);
 
-        // Step 1: Get index size for each worker
-        Map<String, Long> workerSizes = new HashMap<>();
-        for (String w : workers) {
+        for (String w : candidates) {
+            if (!health.isAvailable(w)) {
+                continue;
+            }
+            URI uri = UriComponentsBuilder.fromUriString(w).path("/worker/top-terms")
+                    .queryParam("path", path).queryParam("k", k).encode().build().toUri();
             try {
-                ResponseEntity<Long> resp = rt.getForEntity(w + "/worker/index-size", Long.class);
-                if (resp.getStatusCode().is2xxSuccessful() && resp.getBody() != null) {
-                    workerSizes.put(w, resp.getBody());
-                }
-            } catch (Exception ex) {
-                log.warn("Failed to get index size from {}: {}", w, ex.getMessage());
+                List<TermScore> terms = restTemplate.exchange(uri, HttpMethod.GET, null,
+                        new ParameterizedTypeReference<List<TermScore>>() {}).getBody();
+                health.recordOutcome(w, true);
+                documentLocator.record(path, w);
+                return ResponseEntity.ok(terms);
+            } catch (HttpClientErrorException.NotFound e) {
+                health.recordOutcome(w, true);
+            } catch (HttpClientErrorException.Conflict e) {
+                log.debug("'{}' on {} was indexed without term vectors", path, w);
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            } catch (RestClientException e) {
+                health.recordOutcome(w, false);
+                log.debug("Top terms of '{}' from {} failed: {}", path, w, e.getMessage());
             }
         }
+        return ResponseEntity.notFound().build();
+    }
+
+    private static URI workerDownloadUri(String worker, String relative) {
+        return UriComponentsBuilder.fromUriString(worker)
+                .path("/worker/download")
+                .queryParam("path", relative)
+                .encode()
+                .build()
+                .toUri();
+    }
+
+    @PostMapping("/upload")
+    public ResponseEntity<String> uploadToLeastLoadedWorker(@RequestParam("file") MultipartFile file) throws IOException {
+        if (file.isEmpty()) return ResponseEntity.badRequest().body("Empty file");
+
+        String filename = file.getOriginalFilename();
+        log.debug("Leader received upload for '{}', size={} bytes", filename, file.getSize());
+
+        List<Shard> shards = shardGroupManager.placementShards();
+        if (shards.isEmpty()) {
+            return ResponseEntity.status(503).body("No workers available");
+        }
 
-        // Step 2: Choose the worker with the smallest size
-        String chosenWorker = workerSizes.entrySet().stream()
-                .min(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(null);
+        Shard chosen;
+        if (placement.isHashed()) {
+            // the path decides the shard; nothing to ask the workers
+            chosen = placement.owner(filename, shards);
+            if (chosen == null || chosen.replicas().isEmpty()) {
+                return ResponseEntity.status(503).body("No live replica of the shard owning " + filename);
+            }
+        } else {
+            // the shard with the fewest documents, from the counts workers publish in the registry
+            chosen = bulkUploader.shardLoads(shards).entrySet().stream()
+                    .min(Map.Entry.comparingByValue())
+                    .map(Map.Entry::getKey)
+                    .orElse(null);
 
-        if (chosenWorker == null) {
-            return ResponseEntity.status(503).body("No healthy workers responded with index size");
+            if (chosen == null) {
+                return ResponseEntity.status(503).body("No registered workers to place the file on");
+            }
         }
 
-        // Step 3: Upload to chosen worker
+        // Upload to every replica of the chosen shard at once
         MultiValueMap<String,Object> body = new LinkedMultiValueMap<>();
-        body.add("file", new ByteArrayResource(bytes) {
-            @Override public String getFilename() { return filename; }
-        });
+        // streamed from the multipart temp file, never buffered in heap
+        body.add("file", file.getResource());
         HttpEntity<MultiValueMap<String,Object>> req =
                 new HttpEntity<>(body, createMultipartHeaders());
 
-        try {
-            ResponseEntity<String> r = rt.postForEntity(chosenWorker + "/worker/upload", req, String.class);
-            log.info("Uploaded to {} -> {}", chosenWorker, r.getStatusCode());
-            return r;
-        } catch (Exception ex) {
-            log.warn("Upload to {} failed: {}", chosenWorker, ex.getMessage());
-            return ResponseEntity.status(500).body("Upload failed to selected worker: " + ex.getMessage());
+        Map<String, ResponseEntity<String>> sent = bulkUploader.writeToReplicas(chosen, w ->
+                restTemplate.postForEntity(w + "/worker/upload", req, String.class));
+        for (String w : chosen.replicas()) {
+            // read-your-writes: do not answer the next query from hits cached before this upload
+            generationTracker.forget(w);
+        }
+        if (sent.isEmpty()) {
+            return ResponseEntity.status(500).body("Upload failed on every replica of shard " + chosen.id());
+        }
+        bulkUploader.sent(chosen, 1);
+        ResponseEntity<String> r = null;
+        for (Map.Entry<String, ResponseEntity<String>> e : sent.entrySet()) {
+            log.debug("Uploaded to {} -> {}", e.getKey(), e.getValue().getStatusCode());
+            documentLocator.record(filename, e.getKey());
+            r = e.getValue();
         }
+        return r;
     }
 
 
+    /* -------------------- BULK UPLOAD -------------------- */
+    // many files, each either a document or a zip / tar / tar.gz archive of documents
+    @PostMapping(value = "/upload-bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<BulkUploadSummary> uploadBulk(@RequestParam("files") List<MultipartFile> files,
+                                                        @RequestParam(required = false) String durability) throws IOException {
+        log.info("Leader received bulk upload of {} files", files.size());
+        return bulkUpload(consumer -> {
+            for (MultipartFile f : files) {
+                try (InputStream in = f.getInputStream()) {
+                    String name = f.getOriginalFilename();
+                    ArchiveReader.forEachEntry(ArchiveReader.fromFilename(name), name, in, consumer);
+                }
+            }
+        }, durability);
+    }
+
+    // a single archive sent as the raw request body, read as it arrives
+    @PostMapping(value = "/upload-bulk", consumes = {"application/zip", "application/x-tar", "application/gzip"})
+    public ResponseEntity<BulkUploadSummary> uploadBulkArchive(InputStream body,
+                                                               @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                               @RequestParam(required = false) String durability) throws IOException {
+        log.info("Leader received bulk archive upload ({})", contentType);
+        return bulkUpload(consumer ->
+                ArchiveReader.forEachEntry(ArchiveReader.fromContentType(contentType), null, body, consumer), durability);
+    }
+
+    private ResponseEntity<BulkUploadSummary> bulkUpload(BulkUploader.EntrySource source, String durability) throws IOException {
+        List<Shard> shards = shardGroupManager.placementShards();
+        if (shards.isEmpty()) {
+            return ResponseEntity.status(503).build();
+        }
+        BulkUploadSummary summary = placement.isHashed()
+                ? bulkUploader.upload(shards, source, durability, name -> placement.owner(name, shards))
+                : bulkUploader.upload(shards, source, durability);
+        summary.getPerWorker().keySet().forEach(generationTracker::forget);
+        return ResponseEntity.ok(summary);
+    }
+
+    /* -------------------- REBALANCE -------------------- */
+    // moves documents to their ring owner (hash) or from the fullest shard to the emptiest (least-loaded);
+    // also runs by itself when groups join or leave, or grow apart
+    @PostMapping("/rebalance")
+    public ResponseEntity<?> rebalance() {
+        if (!rebalancer.isEnabled()) {
+            return ResponseEntity.badRequest().body("placement.rebalance.enabled is false");
+        }
+        boolean started = rebalancer.trigger();
+        // not started: a pass is already running
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).body(rebalancer.status());
+    }
+
+    @GetMapping("/rebalance")
+    public ResponseEntity<Map<String, Object>> rebalanceStatus() {
+        return ResponseEntity.ok(rebalancer.status());
+    }
+
+    /* -------------------- HEALTH -------------------- */
+    // latency, error rate and circuit state of every worker the leader has called
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> workerHealth() {
+        return ResponseEntity.ok(health.snapshot());
+    }
+
     private static HttpHeaders createMultipartHeaders() {
         HttpHeaders h = new HttpHeaders();
         h.setContentType(MediaType.MULTIPART_FORM_DATA);
@@ -31,15 +31,7 @@ public class OnElectionAction implements OnElectionCallback {
         String leaderInfoPath = "/leader_info";
 
         try {
-
-            String podIp = System.getenv("POD_IP");
-            int port     = Integer.parseInt(System.getenv().getOrDefault("SERVER_PORT", "8085"));
-            String currentServerAddress = "http://" + podIp + ":" + port;
-
-
-
-
-           // String leaderInfoData = String.valueOf(runningPort);
+            String currentServerAddress = currentServerAddress();
 
             // Create the znode if it doesn't exist, or update it if it does
             if (zooKeeper.exists(leaderInfoPath, false) == null) {
@@ -52,7 +44,7 @@ public class OnElectionAction implements OnElectionCallback {
             } else {
                 zooKeeper.setData(leaderInfoPath, currentServerAddress.getBytes(), -1);
             }
-        } catch (InterruptedException | KeeperException | NumberFormatException e) {
+        } catch (InterruptedException | KeeperException e) {
             e.printStackTrace();
         }
     }
@@ -60,19 +52,18 @@ public class OnElectionAction implements OnElectionCallback {
     @Override
     public void onWorker() {
         try {
-            // 1) Get the pod’s IP from the Downward‑API env var
-            String podIp = System.getenv("POD_IP");          // set in Deployment
-            System.out.println(" debuuuuuuug  IP : "+ podIp);
-            // 2) Get the port; fall back to 8085
-            int port = Integer.parseInt(
-                    environment.getProperty("server.port", "8085"));
-
-            // 3) Register IP:port, not hostname
-            String currentServerAddress = String.format("http://%s:%d", podIp, port);
-
-            serviceRegistry.registerToCluster(currentServerAddress);
+            // register IP:port, not hostname
+            serviceRegistry.registerToCluster(currentServerAddress());
         } catch (InterruptedException | KeeperException e) {
             e.printStackTrace();
         }
     }
+
+    // node.host (the pod IP from the Downward API in Kubernetes) and the port the server actually listens on,
+    // which differs from server.port when that is 0
+    private String currentServerAddress() {
+        String host = environment.getProperty("node.host", "localhost");
+        String port = environment.getProperty("local.server.port", environment.getProperty("server.port", "8085"));
+        return "http://" + host + ":" + port;
+    }
 }
@@ -0,0 +1,484 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.RebalanceCheckpoint;
+import Document_and_Data.WorkerNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import me.zookeeper.leader_election.registry.RebalanceCheckpoints;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Moves documents between shard groups while both sides keep serving queries.
+ * With {@code placement.strategy=hash} it moves the documents that sit on a
+ * shard the hash ring no longer assigns them to (a group joined or left, or
+ * they were placed by load before): each shard's listing is compared with the
+ * ring. With {@code least-loaded} it moves documents from the shard holding the
+ * most to the one holding the fewest, by the counts workers publish in the
+ * registry, until they are within {@code placement.rebalance.max-imbalance} of
+ * the mean; a new, empty group so takes over its share of the index and of the
+ * queries. Either way documents are moved in chunks:
+ * <ol>
+ *   <li>copied to every replica of the owner, acknowledged once searchable there;</li>
+ *   <li>recorded as pending in the {@code /rebalance} checkpoint;</li>
+ *   <li>deleted from every replica of the old shard.</li>
+ * </ol>
+ * A document is therefore never missing from the index: in between it is on
+ * both shards, and the leader's merge keeps one hit per path. Chunks are paced
+ * to {@code placement.rebalance.max-docs-per-sec}. The checkpoint lets a new
+ * leader finish a pending delete and skip shards already done; a pass stops
+ * when the shard groups change under it, and the next one starts over the new
+ * ones. A pass that leaves documents behind is retried over the same groups
+ * after a delay that doubles with each failed pass, up to
+ * {@code placement.rebalance.max-retry-delay-ms}, rather than on every check.
+ * {@code placement.rebalance.enabled=false} turns all of it off.
+ */
+@Component
+public class Rebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(Rebalancer.class);
+
+    private final ServiceRegistry serviceRegistry;
+    private final ShardGroupManager shardGroupManager;
+    private final DocumentPlacement placement;
+    private final BulkUploader bulkUploader;
+    private final GenerationTracker generationTracker;
+    private final WorkerHealth health;
+    private final RebalanceCheckpoints checkpoints;
+    private final RestTemplate restTemplate;
+    private final long checkIntervalMs;
+    private final int chunkDocs;
+    private final double maxDocsPerSec;
+    private final long maxRetryDelayMs;
+    private final boolean enabled;
+    private final double maxImbalance;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    // hash placement: the ring the last pass completed over
+    private volatile Set<String> appliedRing = Set.of();
+    private volatile RebalanceCheckpoint progress;
+    // the shard groups the last passes failed over, how many in a row, and when the next may start
+    private volatile Set<String> failedRing = Set.of();
+    private volatile int failedPasses;
+    private volatile long retryAt;
+    // least-loaded: the registry entries of the workers the last pass moved between, as it left them
+    private volatile Map<String, Long> stalePublished = Map.of();
+    private volatile long staleUntil;
+    private ScheduledExecutorService scheduler;
+    private long nextChunkAt;
+
+    public Rebalancer(ServiceRegistry serviceRegistry,
+                      ShardGroupManager shardGroupManager,
+                      DocumentPlacement placement,
+                      BulkUploader bulkUploader,
+                      GenerationTracker generationTracker,
+                      WorkerHealth health,
+                      RebalanceCheckpoints checkpoints,
+                      RestTemplate restTemplate,
+                      @Value("${placement.rebalance.check-interval-ms:5000}") long checkIntervalMs,
+                      @Value("${placement.rebalance.chunk-docs:100}") int chunkDocs,
+                      @Value("${placement.rebalance.max-docs-per-sec:200}") double maxDocsPerSec,
+                      @Value("${placement.rebalance.max-retry-delay-ms:300000}") long maxRetryDelayMs,
+                      @Value("${placement.rebalance.enabled:true}") boolean enabled,
+                      @Value("${placement.rebalance.max-imbalance:0.1}") double maxImbalance) {
+        this.serviceRegistry = serviceRegistry;
+        this.shardGroupManager = shardGroupManager;
+        this.placement = placement;
+        this.bulkUploader = bulkUploader;
+        this.generationTracker = generationTracker;
+        this.health = health;
+        this.checkpoints = checkpoints;
+        this.restTemplate = restTemplate;
+        this.checkIntervalMs = checkIntervalMs;
+        this.chunkDocs = Math.max(1, chunkDocs);
+        this.maxDocsPerSec = maxDocsPerSec;
+        this.maxRetryDelayMs = Math.max(checkIntervalMs, maxRetryDelayMs);
+        this.enabled = enabled;
+        this.maxImbalance = maxImbalance;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rebalancer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    // cheap either way: the ring is computed locally and the loads come from the registry
+    void check() {
+        if (serviceRegistry.getAllServiceAddresses() == null) {
+            return; // not the leader
+        }
+        List<Shard> shards = shardGroupManager.placementShards();
+        Set<String> groups = ids(shards);
+        if (groups.isEmpty()) {
+            return;
+        }
+        if (placement.isHashed() ? groups.equals(appliedRing)
+                : countsStale() || !imbalanced(bulkUploader.shardLoads(shards).values())) {
+            return;
+        }
+        // new groups are worth a pass at once; the ones a pass just failed over wait out their delay
+        if (groups.equals(failedRing) && System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        run();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Runs one pass now unless one is already running; false if it was. */
+    public boolean trigger() {
+        if (scheduler == null) {
+            return false;
+        }
+        if (running.get()) {
+            return false;
+        }
+        scheduler.execute(this::run);
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", running.get());
+        m.put("strategy", placement.isHashed() ? "hash" : "least-loaded");
+        if (placement.isHashed()) {
+            m.put("appliedRing", appliedRing);
+        }
+        if (failedPasses > 0) {
+            m.put("failedPasses", failedPasses);
+            m.put("retryAt", retryAt);
+        }
+        RebalanceCheckpoint cp = progress;
+        if (cp != null) {
+            m.put("ring", cp.getRing());
+            m.put("startedAt", cp.getStartedAt());
+            m.put("moved", cp.getMoved());
+            m.put("failed", cp.getFailed());
+            m.put("completedShards", cp.getCompletedShards());
+            m.put("pendingDeletes", cp.getPendingPaths().size());
+        }
+        return m;
+    }
+
+    void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        Set<String> groups = Set.of();
+        boolean done = false;
+        try {
+            List<Shard> shards = shardGroupManager.placementShards();
+            groups = ids(shards);
+            if (groups.isEmpty()) {
+                return;
+            }
+            done = placement.isHashed() ? ringPass(shards) : loadPass(shards);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Rebalancing failed: {}", e.getMessage());
+        } finally {
+            if (!groups.isEmpty()) {
+                settle(groups, done);
+            }
+            running.set(false);
+        }
+    }
+
+    // hash placement: every document the ring places elsewhere goes to its owner; true unless one was left behind
+    private boolean ringPass(List<Shard> shards) throws KeeperException, InterruptedException {
+        HashRing ring = placement.ring(shards);
+        Map<String, Shard> byId = byId(shards);
+
+        RebalanceCheckpoint cp = checkpoints.load();
+        if (cp != null && !cp.getPendingPaths().isEmpty()) {
+            finishPendingDelete(cp, byId, p -> cp.getPendingShard().equals(ring.owner(DocumentPlacement.key(p))));
+        }
+        // a finished pass, or one over another ring, is not resumed
+        RebalanceCheckpoint pass = cp;
+        if (pass == null || !new TreeSet<>(pass.getRing()).equals(ring.nodes())
+                || pass.getCompletedShards().containsAll(ring.nodes())) {
+            pass = new RebalanceCheckpoint(new ArrayList<>(ring.nodes()), System.currentTimeMillis());
+        } else if (!pass.getCompletedShards().isEmpty()) {
+            log.info("Resuming rebalancing pass, shards {} already done", pass.getCompletedShards());
+        }
+        progress = pass;
+        long failedBefore = pass.getFailed();
+
+        for (Shard source : shards) {
+            if (source.replicas().isEmpty() || pass.getCompletedShards().contains(source.id())) {
+                continue;
+            }
+            String from = health.byLatency(source.replicas()).get(0);
+            Map<String, List<String>> misplaced = new LinkedHashMap<>();
+            for (String path : bulkUploader.documents(from, Integer.MAX_VALUE).keySet()) {
+                String owner = ring.owner(DocumentPlacement.key(path));
+                if (owner != null && !owner.equals(source.id())) {
+                    misplaced.computeIfAbsent(owner, o -> new ArrayList<>()).add(path);
+                }
+            }
+            boolean clean = true;
+            for (Map.Entry<String, List<String>> e : misplaced.entrySet()) {
+                Shard target = byId.get(e.getKey());
+                List<String> paths = e.getValue();
+                log.info("Moving {} documents from shard {} to {}", paths.size(), source.id(), target.id());
+                for (int i = 0; i < paths.size(); i += chunkDocs) {
+                    if (!ids(shardGroupManager.placementShards()).equals(ring.nodes())) {
+                        log.info("Shard groups changed, restarting the rebalancing pass over the new ring");
+                        return true; // not a failure: the new ring gets its pass at once
+                    }
+                    List<String> chunk = paths.subList(i, Math.min(paths.size(), i + chunkDocs));
+                    pace(chunk.size());
+                    clean &= move(pass, source, from, target, chunk);
+                }
+            }
+            if (clean) {
+                pass.getCompletedShards().add(source.id());
+                checkpoints.save(pass);
+            }
+        }
+        checkpoints.save(pass);
+        log.info("Rebalancing pass done: {}", pass);
+        if (pass.getFailed() != failedBefore) {
+            return false;
+        }
+        appliedRing = ring.nodes();
+        return true;
+    }
+
+    /*
+     * least-loaded placement: a chunk at a time from the fullest shard to the emptiest, never past the mean. The
+     * registry counts trail the workers' ingest, so the moves are planned from one reading and kept up to date
+     * locally, a shard is only ever a source or a target in one pass, and the next pass waits for the workers
+     * involved to publish counts that include this one's moves.
+     */
+    private boolean loadPass(List<Shard> shards) throws KeeperException, InterruptedException {
+        Set<String> groups = ids(shards);
+        RebalanceCheckpoint cp = checkpoints.load();
+        if (cp != null && !cp.getPendingPaths().isEmpty()) {
+            // copied to the emptiest shard of its pass: nothing places them back
+            finishPendingDelete(cp, byId(shards), p -> false);
+        }
+        RebalanceCheckpoint pass = new RebalanceCheckpoint(new ArrayList<>(groups), System.currentTimeMillis());
+        progress = pass;
+
+        Map<Shard, Long> loads = new LinkedHashMap<>(bulkUploader.shardLoads(shards));
+        Set<Shard> sources = new HashSet<>();
+        Set<Shard> targets = new HashSet<>();
+        while (imbalanced(loads.values())) {
+            if (!ids(shardGroupManager.placementShards()).equals(groups)) {
+                log.info("Shard groups changed, restarting the rebalancing pass over the new groups");
+                break;
+            }
+            Map.Entry<Shard, Long> fullest = Collections.max(loads.entrySet(), Map.Entry.comparingByValue());
+            Map.Entry<Shard, Long> emptiest = Collections.min(loads.entrySet(), Map.Entry.comparingByValue());
+            Shard source = fullest.getKey();
+            Shard target = emptiest.getKey();
+            if (targets.contains(source) || sources.contains(target)) {
+                break; // the counts moved under the pass: the next one starts from fresh ones
+            }
+            long mean = Math.round(loads.values().stream().mapToLong(Long::longValue).average().orElse(0));
+            long docs = Math.max(1, Math.min(fullest.getValue() - mean, mean - emptiest.getValue()));
+            String from = health.byLatency(source.replicas()).get(0);
+            List<String> chunk = new ArrayList<>(bulkUploader.documents(from, (int) Math.min(chunkDocs, docs)).keySet());
+            if (chunk.isEmpty()) {
+                break; // its count was ahead of its index
+            }
+            log.info("Moving {} documents from shard {} ({} docs) to {} ({} docs)",
+                    chunk.size(), source.id(), fullest.getValue(), target.id(), emptiest.getValue());
+            pace(chunk.size());
+            if (!move(pass, source, from, target, chunk)) {
+                break;
+            }
+            sources.add(source);
+            targets.add(target);
+            loads.merge(source, (long) -chunk.size(), Long::sum);
+            loads.merge(target, (long) chunk.size(), Long::sum);
+        }
+        checkpoints.save(pass);
+        if (pass.getMoved() > 0 || pass.getFailed() > 0) {
+            log.info("Rebalancing pass done: {}", pass);
+            awaitCounts(sources, targets);
+        }
+        return pass.getFailed() == 0;
+    }
+
+    // the next load pass starts once these workers published again, or after max-retry-delay-ms if one never does
+    private void awaitCounts(Set<Shard> sources, Set<Shard> targets) {
+        Map<String, WorkerNode> nodes = serviceRegistry.getNodes();
+        Map<String, Long> published = new HashMap<>();
+        for (Set<Shard> side : List.of(sources, targets)) {
+            for (Shard shard : side) {
+                for (String w : shard.replicas()) {
+                    WorkerNode node = nodes == null ? null : nodes.get(w);
+                    published.put(w, node == null ? 0 : node.getUpdatedAt());
+                }
+            }
+        }
+        stalePublished = published;
+        staleUntil = System.currentTimeMillis() + maxRetryDelayMs;
+    }
+
+    private boolean countsStale() {
+        Map<String, Long> published = stalePublished;
+        if (published.isEmpty()) {
+            return false;
+        }
+        Map<String, WorkerNode> nodes = serviceRegistry.getNodes();
+        boolean stale = System.currentTimeMillis() < staleUntil && nodes != null
+                && published.entrySet().stream().anyMatch(e -> nodes.containsKey(e.getKey())
+                        && nodes.get(e.getKey()).getUpdatedAt() == e.getValue());
+        if (!stale) {
+            stalePublished = Map.of();
+        }
+        return stale;
+    }
+
+    // more apart than max-imbalance of the mean (and than one document, so an even split is never chased)
+    private boolean imbalanced(Collection<Long> loads) {
+        if (loads.size() < 2) {
+            return false;
+        }
+        long max = Collections.max(loads);
+        long min = Collections.min(loads);
+        double mean = loads.stream().mapToLong(Long::longValue).average().orElse(0);
+        return max - min > Math.max(1, maxImbalance * mean);
+    }
+
+    private static Set<String> ids(List<Shard> shards) {
+        Set<String> ids = new TreeSet<>();
+        shards.forEach(s -> ids.add(s.id()));
+        return ids;
+    }
+
+    private static Map<String, Shard> byId(List<Shard> shards) {
+        Map<String, Shard> byId = new HashMap<>();
+        shards.forEach(s -> byId.put(s.id(), s));
+        return byId;
+    }
+
+    // shards already done are checkpointed, but a failed one is listed again in full, so not on every check
+    private void settle(Set<String> groups, boolean done) {
+        if (done) {
+            failedPasses = 0;
+            failedRing = Set.of();
+            return;
+        }
+        failedPasses = groups.equals(failedRing) ? failedPasses + 1 : 1;
+        failedRing = groups;
+        long delay = Math.min(maxRetryDelayMs, checkIntervalMs << Math.min(failedPasses - 1, 20));
+        retryAt = System.currentTimeMillis() + delay;
+        log.info("Rebalancing over {} left documents behind ({} failed passes), retrying in {} ms", groups, failedPasses, delay);
+    }
+
+    // copy to every replica of the owner, then delete from every replica of the old shard
+    private boolean move(RebalanceCheckpoint cp, Shard source, String from, Shard target, List<String> chunk)
+            throws KeeperException, InterruptedException {
+        try {
+            BulkUploadSummary copied = bulkUploader.upload(List.of(target), bulkUploader.fromWorker(from, chunk),
+                    "refresh", name -> target);
+            // the owner's next answer must include the copies: its cached results are from before them
+            target.replicas().forEach(generationTracker::forget);
+            if (copied.getFailed() > 0 || copied.getIndexed() < chunk.size()
+                    || !copied.getPerWorker().keySet().containsAll(target.replicas())) {
+                log.warn("Copy of {} documents to shard {} incomplete, keeping them on {}: {}",
+                        chunk.size(), target.id(), source.id(), copied.getFailures());
+                cp.setFailed(cp.getFailed() + chunk.size());
+                return false;
+            }
+        } catch (IOException | RestClientException e) {
+            log.warn("Copying {} documents from {} to {} failed: {}", chunk.size(), source.id(), target.id(), e.getMessage());
+            cp.setFailed(cp.getFailed() + chunk.size());
+            return false;
+        }
+
+        cp.setPendingShard(source.id());
+        cp.setPendingPaths(new ArrayList<>(chunk));
+        checkpoints.save(cp);
+        if (!delete(source, chunk)) {
+            // stays pending: the next pass (or the next leader) deletes them first
+            cp.setFailed(cp.getFailed() + chunk.size());
+            return false;
+        }
+        cp.setPendingShard(null);
+        cp.setPendingPaths(new ArrayList<>());
+        cp.setMoved(cp.getMoved() + chunk.size());
+        checkpoints.save(cp);
+        // until the workers republish their counts, least-loaded placement sees the move from these
+        bulkUploader.sent(target, chunk.size());
+        bulkUploader.sent(source, -chunk.size());
+        return true;
+    }
+
+    private boolean delete(Shard source, List<String> paths) {
+        Map<String, BulkUploadSummary> deleted = bulkUploader.writeToReplicas(source, w ->
+                restTemplate.postForObject(w + "/worker/delete?durability=refresh", new HttpEntity<>(paths),
+                        BulkUploadSummary.class));
+        source.replicas().forEach(generationTracker::forget);
+        return deleted.size() == source.replicas().size();
+    }
+
+    // a chunk copied before the last leader stopped: delete what does not belong back on that shard
+    private void finishPendingDelete(RebalanceCheckpoint cp, Map<String, Shard> byId, Predicate<String> stays)
+            throws KeeperException, InterruptedException {
+        Shard source = byId.get(cp.getPendingShard());
+        if (source != null) {
+            List<String> paths = new ArrayList<>();
+            for (String p : cp.getPendingPaths()) {
+                if (!stays.test(p)) {
+                    paths.add(p);
+                }
+            }
+            log.info("Finishing pending delete of {} moved documents on shard {}", paths.size(), source.id());
+            if (!paths.isEmpty() && !delete(source, paths)) {
+                return;
+            }
+        }
+        cp.setPendingShard(null);
+        cp.setPendingPaths(new ArrayList<>());
+        checkpoints.save(cp);
+    }
+
+    // keeps the move under max-docs-per-sec, so the workers' query latency is not traded for it
+    private void pace(int docs) throws InterruptedException {
+        if (maxDocsPerSec <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextChunkAt > now) {
+            TimeUnit.NANOSECONDS.sleep(nextChunkAt - now);
+        }
+        nextChunkAt = Math.max(now, nextChunkAt) + (long) (docs * 1e9 / maxDocsPerSec);
+    }
+}
@@ -0,0 +1,68 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.DocumentScoreInfo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.zookeeper.leader_election.worker.QueryLanguage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Per-shard search results, keyed by worker, that worker's index generation,
+ * the query syntax and normalised query, the similarity it was scored with, the per-shard
+ * result size and (for global-statistics searches) the generation vector of
+ * all workers. A shard whose generation
+ * moved on simply misses, so only changed shards are queried again; stale
+ * entries age out of the LRU.
+ */
+@Component
+public class ResultCache {
+
+    private record Key(String worker, String generation, String query, String similarity, int size, String statsVersion) {}
+
+    private final Cache<Key, List<DocumentScoreInfo>> entries;
+    private final boolean enabled;
+
+    public ResultCache(@Value("${search.result-cache.enabled:true}") boolean enabled,
+                       @Value("${search.result-cache.max-entries:10000}") long maxEntries,
+                       @Value("${search.result-cache.ttl-ms:300000}") long ttlMs) {
+        this.enabled = enabled;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<DocumentScoreInfo> get(String worker, String generation, String query, String similarity, int size,
+                                       String statsVersion) {
+        if (!enabled || generation == null || statsVersion == null) {
+            return null;
+        }
+        return entries.getIfPresent(new Key(worker, generation, query, similarity, size, statsVersion));
+    }
+
+    public void put(String worker, String generation, String query, String similarity, int size, String statsVersion,
+                    List<DocumentScoreInfo> hits) {
+        if (enabled && generation != null && statsVersion != null && hits != null) {
+            entries.put(new Key(worker, generation, query, similarity, size, statsVersion), List.copyOf(hits));
+        }
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    // between plain words whitespace never changes the parsed query; case can ("AND" vs "and"), so it is kept.
+    // The other syntaxes can quote whitespace (an exact path), so only their ends are trimmed.
+    public static String normalize(String syntax, String query) {
+        String q = QueryLanguage.PLAIN.equals(syntax) ? query.trim().replaceAll("\\s+", " ") : query.trim();
+        return syntax + ':' + q;
+    }
+}
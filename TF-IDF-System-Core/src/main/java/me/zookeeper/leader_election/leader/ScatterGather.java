@@ -0,0 +1,326 @@
+package me.zookeeper.leader_election.leader;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import me.zookeeper.leader_election.config.TraceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Sends one call to every worker at the same time and collects whatever came
+ * back before the global query deadline. Workers that failed or missed the
+ * deadline are reported as missing so the caller can flag a partial result.
+ * For replicated shards, {@link #gatherShards} asks one replica per shard (the
+ * fastest so far) and hedges: if it has not answered within its own latency
+ * percentile, the next replica gets the same call and the first answer wins.
+ * Workers whose circuit is open (see {@link WorkerHealth}) are not called and
+ * count as missing straight away, so they cost a query nothing.
+ * Every call is timed per worker ({@code tfidf.leader.rpc}) and runs with the
+ * caller's trace ID.
+ * <p>
+ * The calls are blocking HTTP requests, and cancelling one at the deadline does
+ * not interrupt its socket read: its thread stays busy until the worker answers
+ * or the read times out. The pool therefore grows with demand (workers times
+ * concurrent queries) instead of queueing, so a slow worker holding threads does
+ * not delay calls to the others; {@code search.fanout-threads} stay warm, idle
+ * threads above that exit, and past {@code search.fanout-max-threads} calls
+ * count as missing at once.
+ */
+@Component
+public class ScatterGather {
+
+    private static final Logger log = LoggerFactory.getLogger(ScatterGather.class);
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService hedgeTimer;
+    private final WorkerHealth health;
+    private final MeterRegistry registry;
+    // per worker and outcome, e.g. "http://10.0.0.7:8085 true"
+    private final Map<String, Timer> rpcTimers = new ConcurrentHashMap<>();
+    private final int maxThreads;
+    private final long deadlineMs;
+    private final boolean hedging;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayMs;
+    private final long hedgeDefaultDelayMs;
+
+    public ScatterGather(WorkerHealth health, MeterRegistry registry,
+                         @Value("${search.fanout-threads:32}") int threads,
+                         @Value("${search.fanout-max-threads:1024}") int maxThreads,
+                         @Value("${search.deadline-ms:5000}") long deadlineMs,
+                         @Value("${search.hedge.enabled:true}") boolean hedging,
+                         @Value("${search.hedge.percentile:95}") double hedgePercentile,
+                         @Value("${search.hedge.min-delay-ms:20}") long hedgeMinDelayMs,
+                         @Value("${search.hedge.default-delay-ms:200}") long hedgeDefaultDelayMs) {
+        AtomicInteger n = new AtomicInteger();
+        // no queue: a call either gets a thread now or is rejected
+        this.executor = new ThreadPoolExecutor(threads, Math.max(threads, maxThreads),
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "search-fanout-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.hedgeTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-hedge");
+            t.setDaemon(true);
+            return t;
+        });
+        this.health = health;
+        this.registry = registry;
+        this.maxThreads = Math.max(threads, maxThreads);
+        this.deadlineMs = deadlineMs;
+        this.hedging = hedging;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+        this.hedgeDefaultDelayMs = hedgeDefaultDelayMs;
+    }
+
+    public <T> Gathered<T> gather(List<String> workers, Function<String, T> call) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+
+        Map<String, T> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        Map<String, Long> elapsed = new ConcurrentHashMap<>();
+        Map<String, Future<T>> pending = new LinkedHashMap<>();
+        for (String w : workers) {
+            if (health.tryAcquire(w)) {
+                Callable<T> task = TraceContext.wrap(() -> {
+                    long start = System.nanoTime();
+                    boolean ok = false;
+                    try {
+                        T value = call.apply(w);
+                        ok = true;
+                        return value;
+                    } finally {
+                        long nanos = System.nanoTime() - start;
+                        elapsed.put(w, nanos);
+                        recordRpc(w, nanos, ok);
+                    }
+                });
+                try {
+                    pending.put(w, executor.submit(task));
+                } catch (RejectedExecutionException e) {
+                    missing.add(w);
+                    log.warn("Skipping {}: all {} fan-out threads are busy", w, maxThreads);
+                }
+            } else {
+                missing.add(w);
+                log.debug("Skipping {}: circuit open", w);
+            }
+        }
+
+        for (Map.Entry<String, Future<T>> e : pending.entrySet()) {
+            String w = e.getKey();
+            Future<T> f = e.getValue();
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.put(w, f.get(remaining, TimeUnit.NANOSECONDS));
+                health.recordOutcome(w, true);
+            } catch (TimeoutException ex) {
+                f.cancel(true);
+                missing.add(w);
+                health.recordOutcome(w, false);
+                log.warn("Worker {} missed the {} ms query deadline", w, deadlineMs);
+            } catch (ExecutionException ex) {
+                missing.add(w);
+                health.recordOutcome(w, false);
+                log.warn("Worker {} search call failed: {}", w, ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                f.cancel(true);
+                missing.add(w);
+            }
+        }
+        return new Gathered<>(results, missing, elapsed);
+    }
+
+    /**
+     * One answer per shard, from whichever replica gave it first. Results are
+     * keyed by the worker that answered; missing entries are shard ids.
+     */
+    public <T> Gathered<T> gatherShards(List<Shard> shards, Function<String, T> call) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+
+        Map<Shard, ShardCall<T>> pending = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            ShardCall<T> sc = new ShardCall<>(shard, call);
+            sc.start();
+            pending.put(shard, sc);
+        }
+
+        Map<String, T> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        Map<String, Long> elapsed = new LinkedHashMap<>();
+        for (Map.Entry<Shard, ShardCall<T>> e : pending.entrySet()) {
+            Shard shard = e.getKey();
+            ShardCall<T> sc = e.getValue();
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                Answer<T> answer = sc.result.get(remaining, TimeUnit.NANOSECONDS);
+                results.put(answer.worker, answer.value);
+                elapsed.put(answer.worker, answer.nanos);
+            } catch (TimeoutException ex) {
+                missing.add(shard.id());
+                log.warn("Shard {} ({}) missed the {} ms query deadline", shard.id(), shard.replicas(), deadlineMs);
+            } catch (ExecutionException ex) {
+                missing.add(shard.id());
+                log.warn("Shard {}: every replica failed, last error: {}", shard.id(), ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                missing.add(shard.id());
+            } finally {
+                sc.cancel();
+            }
+        }
+        return new Gathered<>(results, missing, elapsed);
+    }
+
+    private void recordRpc(String worker, long nanos, boolean ok) {
+        rpcTimers.computeIfAbsent(worker + " " + ok, key -> Timer.builder("tfidf.leader.rpc")
+                        .tag("worker", worker)
+                        .tag("outcome", ok ? "success" : "failure")
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        hedgeTimer.shutdownNow();
+    }
+
+    private record Answer<T>(String worker, T value, long nanos) {}
+
+    /**
+     * The call for one shard: replicas are tried fastest first, skipping open
+     * circuits. A failure moves on to the next replica at once; a slow replica gets
+     * a hedged duplicate after its latency percentile. The first success completes
+     * {@link #result}.
+     */
+    private final class ShardCall<T> {
+        private final CompletableFuture<Answer<T>> result = new CompletableFuture<>();
+        private final List<String> replicas;
+        private final Function<String, T> call;
+        private final List<Future<?>> running = new ArrayList<>();
+        private int next;
+        private int outstanding;
+        private Exception lastError;
+
+        ShardCall(Shard shard, Function<String, T> call) {
+            this.replicas = health.byLatency(shard.replicas());
+            this.call = call;
+        }
+
+        void start() {
+            if (replicas.isEmpty()) {
+                result.completeExceptionally(new IllegalStateException("no live replica"));
+                return;
+            }
+            launch();
+            if (hedging && replicas.size() > 1 && !result.isDone()) {
+                long p = health.percentileMs(replicas.get(0), hedgePercentile);
+                long delay = p < 0 ? hedgeDefaultDelayMs : Math.max(hedgeMinDelayMs, p);
+                hedgeTimer.schedule(TraceContext.wrap(() -> {
+                    if (!result.isDone()) {
+                        log.debug("Hedging after {} ms: {} has not answered", delay, replicas.get(0));
+                        launch();
+                    }
+                }), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void launch() {
+            if (result.isDone()) {
+                return;
+            }
+            while (next < replicas.size()) {
+                String worker = replicas.get(next++);
+                if (!health.tryAcquire(worker)) {
+                    log.debug("Skipping replica {}: circuit open", worker);
+                    continue;
+                }
+                outstanding++;
+                try {
+                    running.add(executor.submit(TraceContext.wrap(() -> attempt(worker))));
+                } catch (RejectedExecutionException e) {
+                    failed(worker, e);
+                }
+                return;
+            }
+            if (outstanding == 0) {
+                result.completeExceptionally(lastError != null ? lastError
+                        : new IllegalStateException("circuit open on every replica"));
+            }
+        }
+
+        private void attempt(String worker) {
+            long start = System.nanoTime();
+            try {
+                T value = call.apply(worker);
+                long nanos = System.nanoTime() - start;
+                health.record(worker, nanos, true);
+                recordRpc(worker, nanos, true);
+                result.complete(new Answer<>(worker, value, nanos));
+            } catch (Exception e) {
+                // a replica cancelled because another one already answered did not fail
+                if (!result.isDone()) {
+                    long nanos = System.nanoTime() - start;
+                    health.record(worker, nanos, false);
+                    recordRpc(worker, nanos, false);
+                }
+                failed(worker, e);
+            }
+        }
+
+        private synchronized void failed(String worker, Exception e) {
+            outstanding--;
+            lastError = e;
+            log.debug("Replica {} failed: {}", worker, e.getMessage());
+            launch();
+        }
+
+        synchronized void cancel() {
+            for (Future<?> f : running) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    /** Per-worker responses plus the workers that did not answer in time. */
+    public static final class Gathered<T> {
+        private final Map<String, T> results;
+        private final List<String> missing;
+        // how long each worker that was called took (for the slow-query log)
+        private final Map<String, Long> elapsedNanos;
+
+        Gathered(Map<String, T> results, List<String> missing, Map<String, Long> elapsedNanos) {
+            this.results = results;
+            this.missing = missing;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Map<String, T> getResults() {
+            return results;
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        public Map<String, Long> getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public boolean isPartial() {
+            return !missing.isEmpty();
+        }
+    }
+}
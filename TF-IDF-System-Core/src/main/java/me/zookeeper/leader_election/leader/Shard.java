@@ -0,0 +1,7 @@
+package me.zookeeper.leader_election.leader;
+
+import java.util.List;
+
+/** One shard group as seen by a request: its id and the live replicas that may serve it. */
+public record Shard(String id, List<String> replicas) {
+}
@@ -0,0 +1,342 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.ShardGroup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import me.zookeeper.leader_election.registry.ShardGroups;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps every live worker in a replica group of up to {@code replication.factor}
+ * members (see {@link ShardGroups}). Runs on the leader only:
+ * <ul>
+ *   <li>a new worker with an empty index joins the group with the fewest live
+ *       members below the factor, and copies that group's documents from a peer
+ *       before it is searched; a worker that already holds documents, or finds
+ *       no group with room, starts a group of its own;</li>
+ *   <li>a member that comes back after being away re-syncs whatever it missed,
+ *       uploads as well as deletes and moves;</li>
+ *   <li>a member gone for longer than the grace period is dropped, and a group
+ *       left without members is deleted.</li>
+ * </ul>
+ * Searches read one in-sync replica per group ({@link #readableShards()});
+ * uploads write to every live member, syncing ones included ({@link #writableShards()}).
+ */
+@Component
+public class ShardGroupManager {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardGroupManager.class);
+
+    private final ServiceRegistry serviceRegistry;
+    private final ShardGroups shardGroups;
+    private final BulkUploader bulkUploader;
+    private final RestTemplate restTemplate;
+    private final int replicationFactor;
+    private final long deadMemberGraceMs;
+    private final long assignIntervalMs;
+
+    // members seen missing from the registry, and since when
+    private final Map<String, Long> missingSince = new ConcurrentHashMap<>();
+    private final Set<String> syncInProgress = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService syncer;
+
+    public ShardGroupManager(ServiceRegistry serviceRegistry,
+                             ShardGroups shardGroups,
+                             BulkUploader bulkUploader,
+                             RestTemplate restTemplate,
+                             @Value("${replication.factor:1}") int replicationFactor,
+                             @Value("${replication.dead-member-grace-ms:300000}") long deadMemberGraceMs,
+                             @Value("${replication.assign-interval-ms:2000}") long assignIntervalMs) {
+        this.serviceRegistry = serviceRegistry;
+        this.shardGroups = shardGroups;
+        this.bulkUploader = bulkUploader;
+        this.restTemplate = restTemplate;
+        this.replicationFactor = Math.max(1, replicationFactor);
+        this.deadMemberGraceMs = deadMemberGraceMs;
+        this.assignIntervalMs = assignIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shard-groups");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "replica-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, assignIntervalMs, assignIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+        if (syncer != null) syncer.shutdownNow();
+    }
+
+    /* -------------------- SHARDS -------------------- */
+
+    /** One shard per group, with its live in-sync members; live workers not yet in a group are shards of their own. */
+    public List<Shard> readableShards() {
+        return shards(true);
+    }
+
+    /** Like {@link #readableShards()}, but with every live member, so replicas still syncing get new writes too. */
+    public List<Shard> writableShards() {
+        return shards(false);
+    }
+
+    /**
+     * The shards documents are placed on: the groups, with their writable members.
+     * Workers not yet in a group are left out (they get one within a tick), unless
+     * there are no groups at all yet.
+     */
+    public List<Shard> placementShards() {
+        List<Shard> all = writableShards();
+        Set<String> groupIds = new HashSet<>();
+        shardGroups.getGroups().forEach(g -> groupIds.add(g.getId()));
+        List<Shard> grouped = all.stream().filter(s -> groupIds.contains(s.id())).toList();
+        return grouped.isEmpty() ? all : grouped;
+    }
+
+    private List<Shard> shards(boolean inSyncOnly) {
+        List<String> workers = serviceRegistry.getAllServiceAddresses();
+        if (workers == null || workers.isEmpty()) {
+            return List.of();
+        }
+        Set<String> live = new LinkedHashSet<>(workers);
+        List<Shard> shards = new ArrayList<>();
+        for (ShardGroup group : shardGroups.getGroups()) {
+            List<String> replicas = new ArrayList<>();
+            List<String> syncing = new ArrayList<>();
+            for (String m : group.getMembers()) {
+                if (live.remove(m)) {
+                    (group.getSyncing().contains(m) ? syncing : replicas).add(m);
+                }
+            }
+            // a group whose only live members are still syncing is better searched incomplete than not at all
+            if (!inSyncOnly || replicas.isEmpty()) {
+                replicas.addAll(syncing);
+            }
+            if (!replicas.isEmpty() || !group.getMembers().isEmpty()) {
+                shards.add(new Shard(group.getId(), replicas));
+            }
+        }
+        for (String w : live) {
+            shards.add(new Shard(w, List.of(w)));
+        }
+        return shards;
+    }
+
+    /* -------------------- ASSIGNMENT -------------------- */
+
+    synchronized void tick() {
+        List<String> workers = serviceRegistry.getAllServiceAddresses();
+        if (workers == null) {
+            return; // not the leader
+        }
+        try {
+            Set<String> live = new HashSet<>(workers);
+            long now = System.currentTimeMillis();
+            Set<String> assigned = new HashSet<>();
+
+            for (ShardGroup group : copies()) {
+                if (maintain(group, live, now)) {
+                    if (group.getMembers().isEmpty()) {
+                        shardGroups.delete(group.getId());
+                        continue;
+                    }
+                    shardGroups.save(group);
+                }
+                assigned.addAll(group.getMembers());
+            }
+
+            for (String worker : workers) {
+                if (!assigned.contains(worker)) {
+                    assign(worker, live);
+                }
+            }
+
+            for (ShardGroup group : shardGroups.getGroups()) {
+                for (String m : group.getSyncing()) {
+                    if (live.contains(m) && syncInProgress.add(m)) {
+                        syncer.execute(() -> sync(group.getId(), m));
+                    }
+                }
+            }
+        } catch (KeeperException e) {
+            log.warn("Updating shard groups failed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Shard group maintenance failed", e);
+        }
+    }
+
+    // drops members gone past the grace period, and re-syncs members that are back; true if the group changed
+    private boolean maintain(ShardGroup group, Set<String> live, long now) {
+        boolean changed = false;
+        for (Iterator<String> it = group.getMembers().iterator(); it.hasNext(); ) {
+            String m = it.next();
+            if (live.contains(m)) {
+                Long since = missingSince.remove(m);
+                if (since != null && !group.getSyncing().contains(m) && hasInSyncPeer(group, m, live)) {
+                    log.info("Replica {} of group {} is back after {} ms, re-syncing", m, group.getId(), now - since);
+                    group.getSyncing().add(m);
+                    changed = true;
+                }
+                continue;
+            }
+            long since = missingSince.computeIfAbsent(m, k -> now);
+            if (now - since >= deadMemberGraceMs) {
+                log.info("Dropping replica {} from group {}: gone for {} ms", m, group.getId(), now - since);
+                it.remove();
+                group.getSyncing().remove(m);
+                missingSince.remove(m);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void assign(String worker, Set<String> live) throws KeeperException, InterruptedException {
+        ShardGroup target = null;
+        long targetLive = Long.MAX_VALUE;
+        if (replicationFactor > 1 && !hasDocuments(worker)) {
+            for (ShardGroup group : copies()) {
+                long liveMembers = group.getMembers().stream().filter(live::contains).count();
+                if (liveMembers < replicationFactor && liveMembers < targetLive && hasInSyncPeer(group, worker, live)) {
+                    target = group;
+                    targetLive = liveMembers;
+                }
+            }
+        }
+        if (target == null) {
+            shardGroups.create(new ShardGroup(List.of(worker)));
+            return;
+        }
+        target.getMembers().add(worker);
+        target.getSyncing().add(worker);
+        log.info("Worker {} joins group {} as a replica, syncing", worker, target.getId());
+        shardGroups.save(target);
+    }
+
+    private static boolean hasInSyncPeer(ShardGroup group, String worker, Set<String> live) {
+        for (String m : group.getMembers()) {
+            if (!m.equals(worker) && live.contains(m) && !group.getSyncing().contains(m)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a worker that already has an index of its own would mix it into the group it joins
+    private boolean hasDocuments(String worker) {
+        try {
+            return !bulkUploader.documents(worker, 1).isEmpty();
+        } catch (Exception e) {
+            log.debug("Listing documents of {} failed: {}", worker, e.getMessage());
+            return true;
+        }
+    }
+
+    /* -------------------- SYNC -------------------- */
+
+    /**
+     * Copies to {@code target} every document an in-sync peer of its group has and it lacks (or holds another
+     * version of), and deletes from it every document the peer no longer has.
+     */
+    private void sync(String groupId, String target) {
+        try {
+            ShardGroup group = find(groupId);
+            List<String> live = serviceRegistry.getAllServiceAddresses();
+            if (group == null || live == null || !group.getSyncing().contains(target)) {
+                return;
+            }
+            String source = group.getMembers().stream()
+                    .filter(m -> !m.equals(target) && live.contains(m) && !group.getSyncing().contains(m))
+                    .findFirst().orElse(null);
+            if (source == null) {
+                log.debug("Group {} has no in-sync replica to copy to {} from yet", groupId, target);
+                return;
+            }
+
+            // the target is listed first, so a document uploaded to both while the listings run cannot look
+            // like one deleted while the target was away
+            Map<String, String> have = bulkUploader.documents(target, Integer.MAX_VALUE);
+            Map<String, String> want = bulkUploader.documents(source, Integer.MAX_VALUE);
+            Map<String, String> missing = new LinkedHashMap<>();
+            want.forEach((path, hash) -> {
+                if (!hash.equals(have.get(path))) missing.put(path, hash);
+            });
+            List<String> stale = have.keySet().stream().filter(path -> !want.containsKey(path)).toList();
+            log.info("Syncing {} documents of group {} from {} to {}, deleting {}", missing.size(), groupId, source,
+                    target, stale.size());
+
+            BulkUploadSummary summary = bulkUploader.upload(List.of(new Shard(groupId, List.of(target))),
+                    bulkUploader.fromWorker(source, missing.keySet()), "commit");
+            if (summary.getFailed() > 0) {
+                log.warn("Sync of {} from {} incomplete, will retry: {}", target, source, summary.getFailures());
+                return;
+            }
+            if (!stale.isEmpty()) {
+                BulkUploadSummary deleted = restTemplate.postForObject(target + "/worker/delete?durability=commit",
+                        new HttpEntity<>(stale), BulkUploadSummary.class);
+                if (deleted == null || deleted.getFailed() > 0) {
+                    log.warn("Deleting {} stale documents from {} incomplete, will retry: {}", stale.size(), target,
+                            deleted != null ? deleted.getFailures() : "no answer");
+                    return;
+                }
+            }
+            markInSync(groupId, target);
+        } catch (Exception e) {
+            log.warn("Sync of {} in group {} failed, will retry: {}", target, groupId, e.getMessage());
+        } finally {
+            syncInProgress.remove(target);
+        }
+    }
+
+    private synchronized void markInSync(String groupId, String target) throws KeeperException, InterruptedException {
+        ShardGroup group = find(groupId);
+        if (group != null && group.getSyncing().remove(target)) {
+            shardGroups.save(group);
+            log.info("Replica {} of group {} is in sync", target, groupId);
+        }
+    }
+
+    private ShardGroup find(String groupId) {
+        for (ShardGroup g : copies()) {
+            if (g.getId().equals(groupId)) {
+                return g;
+            }
+        }
+        return null;
+    }
+
+    // private copies: the groups ShardGroups hands out are shared with concurrent readers
+    private List<ShardGroup> copies() {
+        List<ShardGroup> copies = new ArrayList<>();
+        for (ShardGroup g : shardGroups.getGroups()) {
+            ShardGroup copy = new ShardGroup(g.getMembers());
+            copy.setId(g.getId());
+            copy.setSyncing(new ArrayList<>(g.getSyncing()));
+            copies.add(copy);
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,70 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.DocumentScoreInfo;
+
+import java.util.*;
+
+/**
+ * Merges per-shard top-K lists into one global page using a bounded min-heap,
+ * so the leader never holds more than {@code offset + k} candidates. A document
+ * reported by several shards is kept once, with its best score.
+ */
+public class TopKMerger {
+
+    // lowest score first so the heap head is the candidate to evict; ties broken by name
+    static final Comparator<DocumentScoreInfo> WORST_FIRST =
+            Comparator.comparingDouble(DocumentScoreInfo::getScore)
+                    .thenComparing((DocumentScoreInfo d) -> d.getDocument().getName(), Comparator.reverseOrder());
+
+    private final int k;
+    private final int offset;
+    private final int capacity;
+    private final PriorityQueue<DocumentScoreInfo> heap;
+    private final Map<String, DocumentScoreInfo> byName = new HashMap<>();
+
+    public TopKMerger(int k, int offset) {
+        if (k <= 0 || offset < 0) {
+            throw new IllegalArgumentException("k must be > 0 and offset >= 0");
+        }
+        this.k = k;
+        this.offset = offset;
+        this.capacity = k + offset;
+        this.heap = new PriorityQueue<>(Math.min(capacity, 1024) + 1, WORST_FIRST);
+    }
+
+    public void add(DocumentScoreInfo hit) {
+        String name = hit.getDocument().getName();
+        DocumentScoreInfo existing = byName.get(name);
+        if (existing != null) {
+            if (existing.getScore() >= hit.getScore()) {
+                return;
+            }
+            heap.remove(existing);
+            byName.remove(name);
+        }
+        if (heap.size() < capacity) {
+            heap.add(hit);
+            byName.put(name, hit);
+        } else if (WORST_FIRST.compare(hit, heap.peek()) > 0) {
+            byName.remove(heap.poll().getDocument().getName());
+            heap.add(hit);
+            byName.put(name, hit);
+        }
+    }
+
+    public void addAll(Collection<DocumentScoreInfo> shardHits) {
+        for (DocumentScoreInfo hit : shardHits) {
+            add(hit);
+        }
+    }
+
+    /** The requested page, best score first. */
+    public List<DocumentScoreInfo> page() {
+        List<DocumentScoreInfo> ranked = new ArrayList<>(heap);
+        ranked.sort(WORST_FIRST.reversed());
+        if (offset >= ranked.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(ranked.subList(offset, Math.min(ranked.size(), offset + k)));
+    }
+}
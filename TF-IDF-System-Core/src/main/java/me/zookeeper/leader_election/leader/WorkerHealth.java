@@ -0,0 +1,246 @@
+package me.zookeeper.leader_election.leader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observed latency of every worker: an EWMA used to pick the fastest replica of
+ * a shard, and a window of recent samples whose percentile decides when a slow
+ * request gets a hedged duplicate on another replica.
+ * <p>
+ * Each worker also has a circuit breaker. It opens after
+ * {@code circuit.failure-threshold} failures in a row, or once the EWMA error
+ * rate reaches {@code circuit.error-rate-threshold}; while open the worker is
+ * not called at all ({@link #tryAcquire}). After {@code circuit.open-ms} one
+ * call is let through as a probe (half-open): success closes the circuit,
+ * failure opens it again for twice as long, up to {@code circuit.max-open-ms}.
+ * A worker whose session has not expired yet thus costs one probe per interval
+ * instead of a timeout on every query.
+ */
+@Component
+public class WorkerHealth {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerHealth.class);
+
+    private static final int WINDOW = 256;
+    private static final double ALPHA = 0.2;
+    private static final double ERROR_ALPHA = 0.1;
+    // outcomes seen before the error rate alone may open a circuit
+    private static final int MIN_CALLS = 10;
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Map<String, Stats> workers = new ConcurrentHashMap<>();
+    private final boolean circuitEnabled;
+    private final int failureThreshold;
+    private final double errorRateThreshold;
+    private final long openNanos;
+    private final long maxOpenNanos;
+
+    public WorkerHealth(@Value("${circuit.enabled:true}") boolean circuitEnabled,
+                        @Value("${circuit.failure-threshold:5}") int failureThreshold,
+                        @Value("${circuit.error-rate-threshold:0.5}") double errorRateThreshold,
+                        @Value("${circuit.open-ms:2000}") long openMs,
+                        @Value("${circuit.max-open-ms:30000}") long maxOpenMs) {
+        this.circuitEnabled = circuitEnabled;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.errorRateThreshold = errorRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.maxOpenNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(openMs, maxOpenMs));
+    }
+
+    /** A search call: latency (feeds replica order and hedging) and outcome (feeds the circuit). */
+    public void record(String worker, long elapsedNanos, boolean success) {
+        Stats s = stats(worker);
+        s.record(elapsedNanos, success);
+        s.outcome(success);
+    }
+
+    /** Any other call (polls, probes): outcome only, so the latency window stays about searches. */
+    public void recordOutcome(String worker, boolean success) {
+        stats(worker).outcome(success);
+    }
+
+    /**
+     * Whether {@code worker} may be called now. Always true with a closed circuit;
+     * for an open one, true once per open interval, and that call is the probe.
+     * Callers that get true must record the call's outcome.
+     */
+    public boolean tryAcquire(String worker) {
+        if (!circuitEnabled) {
+            return true;
+        }
+        Stats s = workers.get(worker);
+        return s == null || s.tryAcquire(System.nanoTime());
+    }
+
+    /** Like {@link #tryAcquire} without claiming the probe: false while the circuit is open and no probe is due. */
+    public boolean isAvailable(String worker) {
+        if (!circuitEnabled) {
+            return true;
+        }
+        Stats s = workers.get(worker);
+        return s == null || s.available(System.nanoTime());
+    }
+
+    private Stats stats(String worker) {
+        return workers.computeIfAbsent(worker, Stats::new);
+    }
+
+    /** Smoothed latency in ms; 0 for a worker never measured, so new replicas get tried. */
+    public double ewmaMs(String worker) {
+        Stats s = workers.get(worker);
+        return s == null ? 0 : s.ewmaMs();
+    }
+
+    /** The given latency percentile (0-100) over recent successful calls in ms, or -1 with too few samples. */
+    public long percentileMs(String worker, double percentile) {
+        Stats s = workers.get(worker);
+        return s == null ? -1 : s.percentileMs(percentile);
+    }
+
+    /** Replicas ordered fastest first; those with an open circuit go last. */
+    public List<String> byLatency(Collection<String> replicas) {
+        Map<String, Boolean> available = new HashMap<>();
+        replicas.forEach(r -> available.put(r, isAvailable(r)));
+        List<String> ordered = new ArrayList<>(replicas);
+        ordered.sort(Comparator.<String, Boolean>comparing(r -> !available.get(r)).thenComparingDouble(this::ewmaMs));
+        return ordered;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new TreeMap<>();
+        workers.forEach((w, s) -> m.put(w, s.snapshot()));
+        return m;
+    }
+
+    private final class Stats {
+        private final String worker;
+        private final long[] window = new long[WINDOW];
+        private int count;
+        private int next;
+        private double ewmaNanos = -1;
+
+        // circuit breaker
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long outcomes;
+        private double errorRate;
+        private long currentOpenNanos = openNanos;
+        private long openUntil;
+        // a probe whose outcome never came back (e.g. cancelled) is given up on after an open interval
+        private long probeDeadline;
+
+        Stats(String worker) {
+            this.worker = worker;
+        }
+
+        synchronized void record(long elapsedNanos, boolean success) {
+            // a failure costs at least as much as the slowest recent call, so failing replicas sink
+            long sample = success ? elapsedNanos : Math.max(elapsedNanos, max());
+            ewmaNanos = ewmaNanos < 0 ? sample : ALPHA * sample + (1 - ALPHA) * ewmaNanos;
+            if (success) {
+                window[next] = elapsedNanos;
+                next = (next + 1) % WINDOW;
+                count = Math.min(count + 1, WINDOW);
+            }
+        }
+
+        synchronized void outcome(boolean success) {
+            outcomes++;
+            errorRate = (1 - ERROR_ALPHA) * errorRate + (success ? 0 : ERROR_ALPHA);
+            if (success) {
+                consecutiveFailures = 0;
+                if (state != State.CLOSED) {
+                    log.info("Circuit of {} closed: it answers again", worker);
+                    state = State.CLOSED;
+                    currentOpenNanos = openNanos;
+                }
+                return;
+            }
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN) {
+                open(Math.min(maxOpenNanos, currentOpenNanos * 2));
+            } else if (state == State.CLOSED && circuitEnabled && (consecutiveFailures >= failureThreshold
+                    || outcomes >= MIN_CALLS && errorRate >= errorRateThreshold)) {
+                open(openNanos);
+            }
+        }
+
+        private void open(long nanos) {
+            state = State.OPEN;
+            currentOpenNanos = nanos;
+            openUntil = System.nanoTime() + nanos;
+            log.warn("Circuit of {} open for {} ms ({} failures in a row, error rate {})", worker,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), consecutiveFailures, String.format("%.2f", errorRate));
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            switch (state) {
+                case OPEN -> {
+                    if (now - openUntil < 0) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probeDeadline = now + currentOpenNanos;
+                    return true;
+                }
+                case HALF_OPEN -> {
+                    if (now - probeDeadline < 0) {
+                        return false;
+                    }
+                    probeDeadline = now + currentOpenNanos;
+                    return true;
+                }
+                default -> {
+                    return true;
+                }
+            }
+        }
+
+        synchronized boolean available(long now) {
+            return switch (state) {
+                case OPEN -> now - openUntil >= 0;
+                case HALF_OPEN -> now - probeDeadline >= 0;
+                default -> true;
+            };
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("ewmaMs", ewmaMs());
+            m.put("p95Ms", percentileMs(95));
+            m.put("errorRate", errorRate);
+            m.put("circuit", state.name());
+            return m;
+        }
+
+        synchronized double ewmaMs() {
+            return ewmaNanos < 0 ? 0 : ewmaNanos / 1_000_000.0;
+        }
+
+        synchronized long percentileMs(double percentile) {
+            if (count < 20) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(window, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.ceil(percentile / 100.0 * count) - 1);
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+        }
+
+        private long max() {
+            long m = 0;
+            for (int i = 0; i < count; i++) {
+                m = Math.max(m, window[i]);
+            }
+            return m;
+        }
+    }
+}
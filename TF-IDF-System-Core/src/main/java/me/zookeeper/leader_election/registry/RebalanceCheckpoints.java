@@ -0,0 +1,67 @@
+package me.zookeeper.leader_election.registry;
+
+import Document_and_Data.RebalanceCheckpoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.zookeeper.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * The rebalancing checkpoint, one persistent znode {@code /rebalance} holding
+ * JSON. Written by the leader after every chunk it moves, so a leader elected
+ * in the middle of a pass finishes the pending deletes and skips the shards
+ * already done.
+ */
+@Component
+public class RebalanceCheckpoints {
+
+    private static final Logger logger = LoggerFactory.getLogger(RebalanceCheckpoints.class);
+
+    private static final String REBALANCE_ZNODE = "/rebalance";
+    private final ZooKeeper zooKeeper;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    public RebalanceCheckpoints(ZooKeeper zooKeeper) {
+        this.zooKeeper = zooKeeper;
+    }
+
+    /** The stored checkpoint, or null if there is none or it cannot be read. */
+    public RebalanceCheckpoint load() {
+        try {
+            byte[] data = zooKeeper.getData(REBALANCE_ZNODE, false, null);
+            return data == null || data.length == 0 ? null : mapper.readValue(data, RebalanceCheckpoint.class);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        } catch (KeeperException | IOException e) {
+            logger.warn("Reading the rebalance checkpoint failed: {}", e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public void save(RebalanceCheckpoint checkpoint) throws KeeperException, InterruptedException {
+        byte[] data;
+        try {
+            data = mapper.writeValueAsBytes(checkpoint);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            zooKeeper.setData(REBALANCE_ZNODE, data, -1);
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                zooKeeper.create(REBALANCE_ZNODE, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            } catch (KeeperException.NodeExistsException raced) {
+                zooKeeper.setData(REBALANCE_ZNODE, data, -1);
+            }
+        }
+        logger.debug("Saved rebalance checkpoint {}", checkpoint);
+    }
+}
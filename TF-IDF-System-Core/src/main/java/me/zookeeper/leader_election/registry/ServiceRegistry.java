@@ -1,30 +1,62 @@
 package me.zookeeper.leader_election.registry;
 
+import Document_and_Data.WorkerNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
 import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Workers register an ephemeral sequential znode under {@code /service_registry}
+ * holding their {@link WorkerNode} as JSON (address, capacity, doc count, shard
+ * groups). The leader keeps the whole directory in a {@link CuratorCache}: a
+ * change is applied from the watch event itself, without reading every child
+ * again, and readers get an immutable snapshot from a volatile field, so no
+ * search thread ever waits on ZooKeeper. The snapshot is first published once
+ * the initial load is complete, not once per worker found by it.
+ * <p>
+ * {@link #getAllServiceAddresses()} is null on nodes that never called
+ * {@link #registerForUpdates()}, i.e. everywhere but on the leader.
+ */
 @Component
-public class ServiceRegistry implements Watcher {
+public class ServiceRegistry {
 
     private static final Logger logger = LoggerFactory.getLogger(ServiceRegistry.class);
 
     private static final String REGISTRY_ZNODE = "/service_registry";
+    private static final long INITIAL_LOAD_TIMEOUT_MS = 10_000;
     private final ZooKeeper zooKeeper;
+    private final CuratorFramework curator;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private record Snapshot(List<String> addresses, Map<String, WorkerNode> nodes) {}
 
     private String currentZnode = null;
-    private List<String> allServiceAddresses = null;
+    private WorkerNode self;
+    private CuratorCache cache;
+    private volatile Snapshot snapshot;
+    // the cache's event thread only: parsed entries by znode path, i.e. in registration order
+    private final TreeMap<String, WorkerNode> entries = new TreeMap<>();
+    private boolean initialized;
+
     @Autowired
-    public ServiceRegistry(ZooKeeper zooKeeper) {
+    public ServiceRegistry(ZooKeeper zooKeeper, CuratorFramework curator) {
         this.zooKeeper = zooKeeper;
+        this.curator = curator;
         createServiceRegistryZnode();
     }
     @PostConstruct
@@ -51,25 +83,71 @@ public class ServiceRegistry implements Watcher {
     }
 
 
-    public void registerToCluster(String metadata) throws KeeperException, InterruptedException {
+    public void registerToCluster(String address) throws KeeperException, InterruptedException {
         if (this.currentZnode != null) {
 //            System.out.println("Already registered to service registry");
             logger.debug("Already registered to service registry");
             return;
         }
-        this.currentZnode = zooKeeper.create(REGISTRY_ZNODE + "/n_", metadata.getBytes(),
+        WorkerNode node = new WorkerNode(address);
+        node.setCapacity(Runtime.getRuntime().availableProcessors());
+        node.setMaxHeapBytes(Runtime.getRuntime().maxMemory());
+        node.setUpdatedAt(System.currentTimeMillis());
+        this.currentZnode = zooKeeper.create(REGISTRY_ZNODE + "/n_", toBytes(node),
                 ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        this.self = node;
 //        System.out.println("Registered to service registry");
         logger.debug("Registered to service registry");
     }
 
-    public void registerForUpdates() {
+    /** This worker's registered address, or null if it has not registered. */
+    public String getCurrentAddress() {
+        WorkerNode node = self;
+        return node == null ? null : node.getAddress();
+    }
+
+    /** Republishes this worker's doc count and shard groups; a no-op if it has not registered. */
+    public synchronized void updateMetadata(long docCount, List<String> shardIds) throws KeeperException, InterruptedException {
+        if (currentZnode == null || self == null) {
+            return;
+        }
+        self.setDocCount(docCount);
+        self.setShardIds(new ArrayList<>(shardIds));
+        self.setUpdatedAt(System.currentTimeMillis());
+        zooKeeper.setData(currentZnode, toBytes(self), -1);
+    }
+
+    public synchronized void registerForUpdates() {
+        if (cache != null) {
+            return;
+        }
+        CountDownLatch loaded = new CountDownLatch(1);
+        cache = CuratorCache.build(curator, REGISTRY_ZNODE);
+        cache.listenable().addListener(CuratorCacheListener.builder()
+                .forAll(this::apply)
+                .forInitialized(() -> {
+                    initialized = true;
+                    publish();
+                    loaded.countDown();
+                })
+                .build());
+        cache.start();
         try {
-            updateAddresses();
-        } catch (KeeperException e) {
-            e.printStackTrace();
+            if (!loaded.await(INITIAL_LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Service registry not loaded after {} ms, starting without workers", INITIAL_LOAD_TIMEOUT_MS);
+            }
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        if (snapshot == null) {
+            snapshot = new Snapshot(List.of(), Map.of());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (cache != null) {
+            cache.close();
         }
     }
 
@@ -78,46 +156,81 @@ public class ServiceRegistry implements Watcher {
             if (currentZnode != null && zooKeeper.exists(currentZnode, false) != null) {
                 zooKeeper.delete(currentZnode, -1);
             }
+            currentZnode = null;
+            self = null;
         } catch (KeeperException e) {
             e.printStackTrace();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
     }
+
     public List<String> getAllServiceAddresses() {
-        return allServiceAddresses;
+        Snapshot s = snapshot;
+        return s == null ? null : s.addresses();
     }
 
-    private synchronized void updateAddresses() throws KeeperException, InterruptedException {
-        List<String> workerZnodes = zooKeeper.getChildren(REGISTRY_ZNODE, this);
-
-        List<String> addresses = new ArrayList<>(workerZnodes.size());
+    /** Registered workers by address, in registration order; null like {@link #getAllServiceAddresses()}. */
+    public Map<String, WorkerNode> getNodes() {
+        Snapshot s = snapshot;
+        return s == null ? null : s.nodes();
+    }
 
-        for (String workerZnode : workerZnodes) {
-            String workerFullPath = REGISTRY_ZNODE + "/" + workerZnode;
-            Stat stat = zooKeeper.exists(workerFullPath, false);
-            if (stat == null) {
-                continue;
-            }
+    // only ever runs on the cache's single event thread; parses the one entry the event is about
+    private void apply(CuratorCacheListener.Type type, ChildData oldData, ChildData data) {
+        ChildData child = data != null ? data : oldData;
+        if (child == null || !child.getPath().startsWith(REGISTRY_ZNODE + "/")) {
+            return;
+        }
+        WorkerNode node = type == CuratorCacheListener.Type.NODE_DELETED ? null : parse(child);
+        if (node == null) {
+            entries.remove(child.getPath());
+        } else {
+            entries.put(child.getPath(), node);
+        }
+        // the initial load fires one event per worker: it is published once, when complete
+        if (initialized) {
+            publish();
+        }
+    }
 
-            byte[] addressBytes = zooKeeper.getData(workerFullPath, false, stat);
-            String address = new String(addressBytes);
-            addresses.add(address);
+    private void publish() {
+        Map<String, WorkerNode> nodes = new LinkedHashMap<>();
+        for (WorkerNode node : entries.values()) {
+            nodes.put(node.getAddress(), node);
+        }
+        List<String> addresses = List.copyOf(nodes.keySet());
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(addresses, Collections.unmodifiableMap(nodes));
+        if (previous == null || !previous.addresses().equals(addresses)) {
+            logger.info("The cluster addresses are: {}", addresses);
+        } else {
+            logger.debug("Worker metadata updated: {}", nodes.values());
         }
+    }
 
-        this.allServiceAddresses = Collections.unmodifiableList(addresses);
-//        System.out.println("The cluster addresses are: " + this.allServiceAddresses);
-        logger.info("The cluster addresses are: {}",this.allServiceAddresses);
+    // a worker registered by an older version holds its bare address
+    private WorkerNode parse(ChildData child) {
+        byte[] data = child.getData();
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        if (data[0] != '{') {
+            return new WorkerNode(new String(data, StandardCharsets.UTF_8));
+        }
+        try {
+            return mapper.readValue(data, WorkerNode.class);
+        } catch (IOException e) {
+            logger.warn("Unreadable registry entry {}: {}", child.getPath(), e.getMessage());
+            return null;
+        }
     }
 
-    @Override
-    public void process(WatchedEvent watchedEvent) {
+    private byte[] toBytes(WorkerNode node) {
         try {
-            updateAddresses();
-        } catch (KeeperException e) {
-            throw new RuntimeException(e);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            return mapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
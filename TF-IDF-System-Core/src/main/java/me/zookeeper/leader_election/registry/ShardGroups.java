@@ -0,0 +1,206 @@
+package me.zookeeper.leader_election.registry;
+
+import Document_and_Data.ShardGroup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replica groups, one persistent znode per group under {@code /shard_groups}
+ * (next to {@code /service_registry}) holding its members as JSON. Written by
+ * the leader only; every node keeps a copy in a {@link CuratorCache} so a new
+ * leader starts from the same assignment. As in {@link ServiceRegistry}, each
+ * watch event parses only the group it is about, the initial load is published
+ * once, and readers get an immutable snapshot without waiting on ZooKeeper.
+ * <p>
+ * The leader's own writes are applied to the snapshot as soon as ZooKeeper
+ * accepts them, so it reads them back without re-reading the directory; each
+ * entry keeps its znode version, and the watch event for a write (or an older
+ * one arriving late) does not undo a newer one.
+ */
+@Component
+public class ShardGroups {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardGroups.class);
+
+    private static final String GROUPS_ZNODE = "/shard_groups";
+    private static final long INITIAL_LOAD_TIMEOUT_MS = 10_000;
+    private final ZooKeeper zooKeeper;
+    private final CuratorFramework curator;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private record Entry(int version, ShardGroup group) {}
+
+    // by group id, i.e. in creation order; guarded by this (the cache's event thread and the leader's writes)
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private boolean initialized;
+    private CuratorCache cache;
+    private volatile List<ShardGroup> groups = Collections.emptyList();
+
+    @Autowired
+    public ShardGroups(ZooKeeper zooKeeper, CuratorFramework curator) {
+        this.zooKeeper = zooKeeper;
+        this.curator = curator;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            zooKeeper.create(GROUPS_ZNODE, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            logger.info("Created shard groups znode: {}", GROUPS_ZNODE);
+        } catch (KeeperException.NodeExistsException e) {
+            logger.debug("Shard groups znode already exists: {}", GROUPS_ZNODE);
+        } catch (KeeperException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("Failed to initialize shard groups", e);
+        }
+
+        CountDownLatch loaded = new CountDownLatch(1);
+        cache = CuratorCache.build(curator, GROUPS_ZNODE);
+        cache.listenable().addListener(CuratorCacheListener.builder()
+                .forAll(this::apply)
+                .forInitialized(() -> {
+                    synchronized (this) {
+                        initialized = true;
+                        publish();
+                    }
+                    loaded.countDown();
+                })
+                .build());
+        cache.start();
+        try {
+            if (!loaded.await(INITIAL_LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Shard groups not loaded after {} ms, starting without them", INITIAL_LOAD_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    public List<ShardGroup> getGroups() {
+        return groups;
+    }
+
+    /** Creates a group and returns its id. */
+    public String create(ShardGroup group) throws KeeperException, InterruptedException {
+        byte[] data = toBytes(group);
+        Stat stat = new Stat();
+        String path = zooKeeper.create(GROUPS_ZNODE + "/g_", data,
+                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL, stat);
+        group.setId(path.substring(GROUPS_ZNODE.length() + 1));
+        logger.info("Created shard group {}", group);
+        written(group.getId(), stat.getVersion(), data);
+        return group.getId();
+    }
+
+    public void save(ShardGroup group) throws KeeperException, InterruptedException {
+        byte[] data = toBytes(group);
+        Stat stat = zooKeeper.setData(GROUPS_ZNODE + "/" + group.getId(), data, -1);
+        logger.info("Updated shard group {}", group);
+        written(group.getId(), stat.getVersion(), data);
+    }
+
+    public void delete(String id) throws KeeperException, InterruptedException {
+        try {
+            zooKeeper.delete(GROUPS_ZNODE + "/" + id, -1);
+            logger.info("Deleted shard group {}", id);
+        } catch (KeeperException.NoNodeException e) {
+            logger.debug("Shard group {} already gone", id);
+        }
+        synchronized (this) {
+            entries.remove(id);
+            publish();
+        }
+    }
+
+    // a write ZooKeeper accepted: readable at once, from a copy the caller cannot change under the readers
+    private synchronized void written(String id, int version, byte[] data) {
+        ShardGroup copy = parse(id, data);
+        if (copy != null) {
+            put(id, version, copy);
+            publish();
+        }
+    }
+
+    // the cache's event thread; parses the one group the event is about
+    private synchronized void apply(CuratorCacheListener.Type type, ChildData oldData, ChildData data) {
+        ChildData child = data != null ? data : oldData;
+        if (child == null || !child.getPath().startsWith(GROUPS_ZNODE + "/")) {
+            return;
+        }
+        String id = child.getPath().substring(GROUPS_ZNODE.length() + 1);
+        if (type == CuratorCacheListener.Type.NODE_DELETED) {
+            entries.remove(id);
+        } else {
+            ShardGroup group = parse(id, child.getData());
+            if (group == null) {
+                return;
+            }
+            put(id, child.getStat() == null ? 0 : child.getStat().getVersion(), group);
+        }
+        // the initial load fires one event per group: it is published once, when complete
+        if (initialized) {
+            publish();
+        }
+    }
+
+    private void put(String id, int version, ShardGroup group) {
+        Entry current = entries.get(id);
+        if (current == null || current.version() <= version) {
+            entries.put(id, new Entry(version, group));
+        }
+    }
+
+    private void publish() {
+        List<ShardGroup> read = new ArrayList<>(entries.size());
+        entries.values().forEach(e -> read.add(e.group()));
+        groups = Collections.unmodifiableList(read);
+        logger.debug("Shard groups: {}", read);
+    }
+
+    private ShardGroup parse(String id, byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            ShardGroup group = mapper.readValue(data, ShardGroup.class);
+            group.setId(id);
+            return group;
+        } catch (IOException e) {
+            logger.warn("Unreadable shard group {}: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] toBytes(ShardGroup group) {
+        try {
+            return mapper.writeValueAsBytes(group);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The analysis of the {@code contents} field, built from {@code analysis.*}:
+ * standard tokenizer and lower-casing, then optionally ASCII folding,
+ * stopwords, Snowball stemming for {@code analysis.language}, and word
+ * shingles. With nothing configured this is exactly StandardAnalyzer.
+ * <p>
+ * Queries go through the same chain without the shingle step, so a query's
+ * words match the indexed unigrams; shingles only add phrase terms to the
+ * index (and to {@code /worker/top-terms}). Term vectors, optionally with
+ * positions and offsets, are stored per {@code analysis.term-vectors}.
+ * <p>
+ * {@link #fingerprint()} names everything that decides which terms a text
+ * becomes; it is kept in the index's commit user data under
+ * {@link #COMMIT_KEY}, so a worker started with another chain knows its
+ * index has to be re-analysed. The term-vector mode is kept under
+ * {@link #VECTORS_KEY}: Lucene does not let one index mix documents with and
+ * without vectors in a field, so changing it means building the index anew.
+ * The same holds for the layout of the other fields, versioned as
+ * {@link #SCHEMA_KEY}.
+ */
+final class AnalysisChain {
+
+    static final String COMMIT_KEY = "analysis";
+    static final String VECTORS_KEY = "term-vectors";
+    static final String SCHEMA_KEY = "schema";
+    // 2: path as doc values rather than a stored field
+    static final String SCHEMA = "2";
+    // what indexes written before the chain was configurable were analysed / stored with
+    static final String DEFAULT_FINGERPRINT = "standard,lowercase";
+    static final String DEFAULT_VECTORS = "none";
+    static final String DEFAULT_SCHEMA = "1";
+
+    private final Analyzer indexAnalyzer;
+    private final Analyzer queryAnalyzer;
+    private final String fingerprint;
+    private final String termVectors;
+    private final FieldType contentsType;
+
+    private AnalysisChain(Analyzer indexAnalyzer, Analyzer queryAnalyzer, String fingerprint,
+                          String termVectors, FieldType contentsType) {
+        this.indexAnalyzer = indexAnalyzer;
+        this.queryAnalyzer = queryAnalyzer;
+        this.fingerprint = fingerprint;
+        this.termVectors = termVectors;
+        this.contentsType = contentsType;
+    }
+
+    /**
+     * @param language     Snowball language (english, german, french, ...) for stopwords and stemming; blank for none
+     * @param stopwords    none, default (the language's list, or Lucene's English set) or a file with one word per line
+     * @param stemming     Snowball stemming in {@code language}
+     * @param asciiFolding fold accented characters to ASCII (é -> e)
+     * @param shingles     largest word shingle indexed next to the single words; below 2 for none
+     * @param termVectors  none, terms, positions or offsets (positions and offsets)
+     */
+    static AnalysisChain build(String language, String stopwords, boolean stemming, boolean asciiFolding,
+                               int shingles, String termVectors) throws IOException {
+        String lang = language == null ? "" : language.trim().toLowerCase(Locale.ROOT);
+        String stop = stopwords == null ? "none" : stopwords.trim();
+        if (stemming && lang.isEmpty()) {
+            throw new IllegalArgumentException("analysis.stemming needs analysis.language");
+        }
+
+        List<String> steps = new ArrayList<>(List.of("standard", "lowercase"));
+        CustomAnalyzer.Builder index = CustomAnalyzer.builder(Paths.get(".")).withTokenizer("standard");
+        CustomAnalyzer.Builder query = CustomAnalyzer.builder(Paths.get(".")).withTokenizer("standard");
+        for (CustomAnalyzer.Builder b : List.of(index, query)) {
+            b.addTokenFilter("lowercase");
+            if (asciiFolding) {
+                b.addTokenFilter("asciifolding");
+            }
+            if (stop.equalsIgnoreCase("default") && !lang.isEmpty()) {
+                b.addTokenFilter("stop", "ignoreCase", "true", "format", "snowball",
+                        "words", "org/apache/lucene/analysis/snowball/" + lang + "_stop.txt");
+            } else if (stop.equalsIgnoreCase("default")) {
+                b.addTokenFilter("stop", "ignoreCase", "true");
+            } else if (!stop.equalsIgnoreCase("none") && !stop.isEmpty()) {
+                b.addTokenFilter("stop", "ignoreCase", "true", "words", stop);
+            }
+            if (stemming) {
+                b.addTokenFilter("snowballPorter", "language", Character.toUpperCase(lang.charAt(0)) + lang.substring(1));
+            }
+        }
+        if (asciiFolding) steps.add("asciifolding");
+        if (!stop.equalsIgnoreCase("none") && !stop.isEmpty()) steps.add("stop:" + (stop.equalsIgnoreCase("default") ? lang : stop));
+        if (stemming) steps.add("snowball:" + lang);
+        if (shingles >= 2) {
+            index.addTokenFilter("shingle", "minShingleSize", "2", "maxShingleSize", String.valueOf(shingles),
+                    "outputUnigrams", "true");
+            steps.add("shingle:" + shingles);
+        }
+
+        String vectors = termVectors == null ? DEFAULT_VECTORS : termVectors.trim().toLowerCase(Locale.ROOT);
+        FieldType type = new FieldType(TextField.TYPE_NOT_STORED);
+        switch (vectors) {
+            case "none" -> { }
+            case "terms" -> type.setStoreTermVectors(true);
+            case "positions" -> {
+                type.setStoreTermVectors(true);
+                type.setStoreTermVectorPositions(true);
+            }
+            case "offsets" -> {
+                type.setStoreTermVectors(true);
+                type.setStoreTermVectorPositions(true);
+                type.setStoreTermVectorOffsets(true);
+            }
+            default -> throw new IllegalArgumentException("analysis.term-vectors must be none, terms, positions or offsets");
+        }
+        type.freeze();
+
+        return new AnalysisChain(index.build(), query.build(), String.join(",", steps), vectors, type);
+    }
+
+    Analyzer indexAnalyzer() {
+        return indexAnalyzer;
+    }
+
+    Analyzer queryAnalyzer() {
+        return queryAnalyzer;
+    }
+
+    String fingerprint() {
+        return fingerprint;
+    }
+
+    String termVectors() {
+        return termVectors;
+    }
+
+    /** Commit user data describing an index written with this chain. */
+    Map<String, String> commitData() {
+        return Map.of(COMMIT_KEY, fingerprint, VECTORS_KEY, termVectors, SCHEMA_KEY, SCHEMA);
+    }
+
+    FieldType contentsType() {
+        return contentsType;
+    }
+
+    boolean storesTermVectors() {
+        return contentsType.storeTermVectors();
+    }
+}
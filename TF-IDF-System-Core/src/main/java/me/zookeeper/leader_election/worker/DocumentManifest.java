@@ -0,0 +1,146 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-document file metadata (relative path, size, mtime, content hash) kept
+ * as doc values next to each indexed document. Together they form the
+ * manifest a restarting worker compares the documents directory against.
+ * Because they live in the index, they are always exactly as durable as the
+ * documents they describe.
+ * <p>
+ * The path is also indexed, to update and delete by, but not stored: hits
+ * read it column-wise from the doc values ({@link #paths}), so building a
+ * result never decompresses a stored-fields block.
+ */
+final class DocumentManifest {
+
+    static final String PATH = "path";
+    static final String SIZE = "size";
+    static final String MTIME = "mtime";
+    static final String HASH = "hash";
+
+    static final class Entry {
+        final long size;
+        final long mtime;
+        final byte[] hash;
+
+        Entry(long size, long mtime, byte[] hash) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+        }
+    }
+
+    private DocumentManifest() {}
+
+    static void addPath(org.apache.lucene.document.Document ldoc, String path) {
+        ldoc.add(new StringField(PATH, path, Field.Store.NO));
+        ldoc.add(new SortedDocValuesField(PATH, new BytesRef(path)));
+    }
+
+    static void addFields(org.apache.lucene.document.Document ldoc, Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        ldoc.add(new NumericDocValuesField(SIZE, attrs.size()));
+        ldoc.add(new NumericDocValuesField(MTIME, attrs.lastModifiedTime().toMillis()));
+        ldoc.add(new BinaryDocValuesField(HASH, new BytesRef(hash(file))));
+    }
+
+    /** Visits every live document with its manifest entry. */
+    interface Visitor {
+        void visit(String path, Entry entry) throws IOException;
+    }
+
+    /** Relative path -> manifest entry for every live document; missing values read as -1 / null. */
+    static Map<String, Entry> read(IndexReader reader) throws IOException {
+        Map<String, Entry> manifest = new HashMap<>(Math.max(16, reader.numDocs() * 2));
+        forEach(reader, manifest::put);
+        return manifest;
+    }
+
+    static void forEach(IndexReader reader, Visitor visitor) throws IOException {
+        for (LeafReaderContext ctx : reader.leaves()) {
+            LeafReader leaf = ctx.reader();
+            Bits live = leaf.getLiveDocs();
+            NumericDocValues size = DocValues.getNumeric(leaf, SIZE);
+            NumericDocValues mtime = DocValues.getNumeric(leaf, MTIME);
+            BinaryDocValues hash = DocValues.getBinary(leaf, HASH);
+            SortedDocValues path = DocValues.getSorted(leaf, PATH);
+            for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                if (live != null && !live.get(doc)) continue;
+                if (!path.advanceExact(doc)) continue;
+                visitor.visit(path.lookupOrd(path.ordValue()).utf8ToString(), new Entry(
+                        size.advanceExact(doc) ? size.longValue() : -1,
+                        mtime.advanceExact(doc) ? mtime.longValue() : -1,
+                        hash.advanceExact(doc) ? BytesRef.deepCopyOf(hash.binaryValue()).bytes : null));
+            }
+        }
+    }
+
+    /**
+     * Relative paths of {@code hits}, in the same order; null for a document
+     * without one. Doc values only go forward, so the hits are visited in
+     * doc-ID order, one segment after the other.
+     */
+    static String[] paths(IndexReader reader, ScoreDoc[] hits) throws IOException {
+        // doc ID in the high bits, position in the low ones: sorting orders by doc and keeps the way back
+        long[] order = new long[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            order[i] = (long) hits[i].doc << 32 | i;
+        }
+        Arrays.sort(order);
+
+        String[] paths = new String[hits.length];
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        SortedDocValues values = null;
+        for (long entry : order) {
+            int doc = (int) (entry >>> 32);
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                values = DocValues.getSorted(leaf.reader(), PATH);
+            }
+            if (values.advanceExact(doc - leaf.docBase)) {
+                paths[(int) entry] = values.lookupOrd(values.ordValue()).utf8ToString();
+            }
+        }
+        return paths;
+    }
+
+    static byte[] hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return digest.digest();
+    }
+}
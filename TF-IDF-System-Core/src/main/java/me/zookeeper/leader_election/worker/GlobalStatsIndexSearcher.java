@@ -0,0 +1,56 @@
+package me.zookeeper.leader_election.worker;
+
+import Document_and_Data.CorpusStats;
+import Document_and_Data.FieldStats;
+import Document_and_Data.TermStats;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermStatistics;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Searcher that scores with corpus-wide statistics gathered by the leader
+ * instead of the shard's own, so IDF (and BM25 length normalisation) is the
+ * same on every worker and scores can be compared when merged.
+ * Terms or fields the leader did not send fall back to the local statistics.
+ */
+public class GlobalStatsIndexSearcher extends IndexSearcher {
+
+    private final Map<Term, TermStats> terms = new HashMap<>();
+    private final Map<String, FieldStats> fields = new HashMap<>();
+
+    public GlobalStatsIndexSearcher(IndexReader reader, CorpusStats stats) {
+        super(reader);
+        for (TermStats t : stats.getTerms()) {
+            terms.put(new Term(t.getField(), t.getText()), t);
+        }
+        for (FieldStats f : stats.getFields()) {
+            fields.put(f.getField(), f);
+        }
+    }
+
+    @Override
+    public TermStatistics termStatistics(Term term, int docFreq, long totalTermFreq) throws IOException {
+        TermStats global = terms.get(term);
+        if (global == null || global.getDocFreq() < docFreq) {
+            return super.termStatistics(term, docFreq, totalTermFreq);
+        }
+        return new TermStatistics(term.bytes(), global.getDocFreq(),
+                Math.max(global.getTotalTermFreq(), global.getDocFreq()));
+    }
+
+    @Override
+    public CollectionStatistics collectionStatistics(String field) throws IOException {
+        FieldStats global = fields.get(field);
+        if (global == null || global.getDocCount() <= 0) {
+            return super.collectionStatistics(field);
+        }
+        return new CollectionStatistics(field, global.getMaxDoc(), global.getDocCount(),
+                global.getSumTotalTermFreq(), global.getSumDocFreq());
+    }
+}
@@ -0,0 +1,212 @@
+package me.zookeeper.leader_election.worker;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indexes uploaded files on a bounded pool (IndexWriter is thread-safe) and
+ * groups commits: one fsync per {@code commitMaxDocs} documents or per
+ * {@code commitIntervalMs}, whichever comes first. Callers pick how long to
+ * wait through {@link Durability}. Commit latency and the queue depth are
+ * published as {@code tfidf.worker.commit} and {@code tfidf.worker.ingest.queued}.
+ */
+public class IngestPipeline implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestPipeline.class);
+
+    /** When an upload is acknowledged. */
+    public enum Durability {
+        // accepted into the queue, not yet indexed
+        ENQUEUE,
+        // indexed and visible to searches (NRT reopen), not yet fsynced
+        REFRESH,
+        // indexed and part of a durable commit
+        COMMIT;
+
+        public static Durability parse(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /** Adds one file to the index and returns the writer's sequence number for it. */
+    @FunctionalInterface
+    public interface Indexer {
+        long index(Path file) throws IOException;
+    }
+
+    private final IndexWriter writer;
+    private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    private final Indexer indexer;
+    private final int commitMaxDocs;
+    private final long commitIntervalMs;
+    private final Timer commitTimer;
+
+    private final ThreadPoolExecutor indexPool;
+    // one permit per queued or running upload; bounds the backlog
+    private final Semaphore slots;
+    private final int capacity;
+    private final Thread committer;
+    private final Object commitLock = new Object();
+    private final AtomicInteger uncommittedDocs = new AtomicInteger();
+    private volatile long committedSeq = -1;
+    private volatile boolean closed;
+
+    public IngestPipeline(IndexWriter writer, ControlledRealTimeReopenThread<IndexSearcher> reopenThread, Indexer indexer,
+                          int threads, int queueCapacity, int commitMaxDocs, long commitIntervalMs, MeterRegistry registry) {
+        this.writer = writer;
+        this.reopenThread = reopenThread;
+        this.indexer = indexer;
+        this.commitMaxDocs = commitMaxDocs;
+        this.commitIntervalMs = commitIntervalMs;
+        this.commitTimer = Timer.builder("tfidf.worker.commit").register(registry);
+
+        this.capacity = queueCapacity + threads;
+        this.slots = new Semaphore(capacity);
+        AtomicInteger n = new AtomicInteger();
+        this.indexPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "ingest-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        this.committer = new Thread(this::commitLoop, "ingest-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+        Gauge.builder("tfidf.worker.ingest.queued", this, IngestPipeline::queuedDocs).register(registry);
+    }
+
+    /**
+     * Queues a file for indexing. The future completes with its sequence number once indexed.
+     *
+     * @throws RejectedExecutionException if the ingest queue is full
+     */
+    public CompletableFuture<Long> submit(Path file) {
+        if (!slots.tryAcquire()) {
+            throw new RejectedExecutionException("Ingest queue full");
+        }
+        return run(file);
+    }
+
+    /**
+     * Like {@link #submit(Path)} but waits up to {@code waitMs} for room in the queue,
+     * so bulk loads are slowed down instead of rejected.
+     */
+    public CompletableFuture<Long> submit(Path file, long waitMs) throws InterruptedException {
+        if (!slots.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+            throw new RejectedExecutionException("Ingest queue full");
+        }
+        return run(file);
+    }
+
+    private CompletableFuture<Long> run(Path file) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    long seq = indexer.index(file);
+                    if (uncommittedDocs.incrementAndGet() >= commitMaxDocs) {
+                        synchronized (commitLock) {
+                            commitLock.notifyAll();
+                        }
+                    }
+                    return seq;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    slots.release();
+                }
+            }, indexPool);
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /** Blocks until the operation with this sequence number is visible to searches. */
+    public boolean awaitSearchable(long seq, long timeoutMs) throws InterruptedException {
+        return reopenThread.waitForGeneration(seq, (int) Math.min(timeoutMs, Integer.MAX_VALUE));
+    }
+
+    /** Blocks until a commit containing the operation with this sequence number has been fsynced. */
+    public boolean awaitCommit(long seq, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (commitLock) {
+            while (committedSeq < seq) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                commitLock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    public int queuedDocs() {
+        return capacity - slots.availablePermits();
+    }
+
+    /** Commits now if anything changed since the last commit. */
+    public void commit() throws IOException {
+        if (!writer.hasUncommittedChanges()) {
+            return;
+        }
+        int docs = uncommittedDocs.getAndSet(0);
+        long start = System.nanoTime();
+        long seq = writer.commit();
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        synchronized (commitLock) {
+            committedSeq = Math.max(committedSeq, seq);
+            commitLock.notifyAll();
+        }
+        log.debug("Committed {} docs (seq={})", docs, seq);
+    }
+
+    private void commitLoop() {
+        while (!closed) {
+            try {
+                synchronized (commitLock) {
+                    if (uncommittedDocs.get() < commitMaxDocs) {
+                        commitLock.wait(commitIntervalMs);
+                    }
+                }
+                if (!closed) {
+                    commit();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Group commit failed", e);
+            }
+        }
+    }
+
+    /** Drains the queue, commits whatever is left and stops the committer. */
+    @Override
+    public void close() throws IOException {
+        indexPool.shutdown();
+        try {
+            if (!indexPool.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Ingest queue not drained, {} uploads dropped", indexPool.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        committer.interrupt();
+        commit();
+    }
+}
@@ -0,0 +1,134 @@
+package me.zookeeper.leader_election.worker;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.TFIDFSimilarity;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Top-k hits per index segment, so a repeated query only scores the segments
+ * that are new since it last ran. Entries are keyed by the segment reader's
+ * cache key (which includes its deletions), the query, k, the similarity and
+ * the statistics it reads: the query terms' document frequencies, and the
+ * document count of their fields (BM25 also reads the average field length).
+ * The key holds the values themselves rather than a hash of them, so two
+ * different sets of statistics never share an entry. If a refresh changes any
+ * of these, every segment's scores change and the entries no longer match. With local statistics that is every refresh that
+ * adds documents to a queried field, as it raises the document count; entries
+ * survive refreshes that only delete (counts stay until the segment merges) and,
+ * when the leader pins corpus-wide statistics, every refresh until those move.
+ */
+class LeafTopKCache {
+
+    private record Key(IndexReader.CacheKey leaf, Query query, int k, String similarity, List<Long> statistics) {}
+
+    // leaf-relative doc ids: the doc base of a segment moves when segments before it merge
+    private record LeafHits(int[] docs, float[] scores) {}
+
+    private final Cache<Key, LeafHits> entries;
+
+    LeafTopKCache(long maxHits) {
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxHits)
+                .<Key, LeafHits>weigher((k, v) -> v.docs.length + 1)
+                .recordStats()
+                .build();
+    }
+
+    TopDocs search(IndexSearcher searcher, Query query, int k) throws IOException {
+        Query rewritten = searcher.rewrite(query);
+        String similarity = searcher.getSimilarity().toString();
+        List<Long> statistics = statistics(searcher, rewritten);
+
+        Weight weight = null;
+        List<ScoreDoc> merged = new ArrayList<>();
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            IndexReader.CacheHelper helper = leaf.reader().getReaderCacheHelper();
+            Key key = helper == null ? null : new Key(helper.getKey(), rewritten, k, similarity, statistics);
+            LeafHits hits = key == null ? null : entries.getIfPresent(key);
+            if (hits == null) {
+                if (weight == null) {
+                    weight = searcher.createWeight(rewritten, ScoreMode.TOP_SCORES, 1f);
+                }
+                hits = searchLeaf(weight, leaf, k);
+                if (key != null) {
+                    entries.put(key, hits);
+                }
+            }
+            for (int i = 0; i < hits.docs.length; i++) {
+                merged.add(new ScoreDoc(leaf.docBase + hits.docs[i], hits.scores[i]));
+            }
+        }
+
+        // same order as TopScoreDocCollector: score descending, then doc id
+        merged.sort((a, b) -> a.score != b.score ? Float.compare(b.score, a.score) : Integer.compare(a.doc, b.doc));
+        ScoreDoc[] top = merged.subList(0, Math.min(k, merged.size())).toArray(new ScoreDoc[0]);
+        return new TopDocs(new TotalHits(merged.size(), TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), top);
+    }
+
+    private static LeafHits searchLeaf(Weight weight, LeafReaderContext leaf, int k) throws IOException {
+        TopScoreDocCollector collector = TopScoreDocCollector.create(k, k);
+        BulkScorer scorer = weight.bulkScorer(leaf);
+        if (scorer != null) {
+            LeafCollector lc = collector.getLeafCollector(leaf);
+            scorer.score(lc, leaf.reader().getLiveDocs());
+            lc.finish();
+        }
+        ScoreDoc[] sds = collector.topDocs().scoreDocs;
+        int[] docs = new int[sds.length];
+        float[] scores = new float[sds.length];
+        for (int i = 0; i < sds.length; i++) {
+            docs[i] = sds[i].doc - leaf.docBase;
+            scores[i] = sds[i].score;
+        }
+        return new LeafHits(docs, scores);
+    }
+
+    // everything a hit's score depends on besides the segment and the similarity:
+    // BM25 and the TF-IDF similarities read docFreq and docCount, BM25 sumTotalTermFreq too
+    private static List<Long> statistics(IndexSearcher searcher, Query rewritten) throws IOException {
+        Set<Term> terms = new TreeSet<>();
+        rewritten.visit(QueryVisitor.termCollector(terms));
+        IndexReader reader = searcher.getIndexReader();
+        boolean lengths = !(searcher.getSimilarity() instanceof TFIDFSimilarity);
+
+        List<Long> statistics = new ArrayList<>();
+        Set<String> fields = new TreeSet<>();
+        for (Term t : terms) {
+            int docFreq = reader.docFreq(t);
+            if (docFreq > 0) {
+                statistics.add(searcher.termStatistics(t, docFreq, reader.totalTermFreq(t)).docFreq());
+                fields.add(t.field());
+            } else {
+                // scores nothing, so no statistics of its field are read for it
+                statistics.add(0L);
+            }
+        }
+        for (String field : fields) {
+            CollectionStatistics cs = searcher.collectionStatistics(field);
+            statistics.add(cs == null ? 0L : cs.docCount());
+            if (lengths) {
+                statistics.add(cs == null ? 0L : cs.sumTotalTermFreq());
+            }
+        }
+        return List.copyOf(statistics);
+    }
+
+    Map<String, Object> stats() {
+        CacheStats s = entries.stats();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("hits", s.hitCount());
+        m.put("misses", s.missCount());
+        m.put("hitRate", s.hitRate());
+        m.put("entries", entries.estimatedSize());
+        m.put("evictions", s.evictionCount());
+        return m;
+    }
+}
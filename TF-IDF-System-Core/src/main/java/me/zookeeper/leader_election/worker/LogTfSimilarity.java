@@ -0,0 +1,33 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.search.similarities.TFIDFSimilarity;
+
+/**
+ * TF-IDF with logarithmic term frequency: {@code 1 + ln(freq)} instead of
+ * ClassicSimilarity's {@code sqrt(freq)}, so a term repeated many times in a
+ * document gains less. IDF and length normalisation are ClassicSimilarity's;
+ * norms are encoded the same way as by every built-in similarity, so an index
+ * written with any of them can be searched with this one.
+ */
+final class LogTfSimilarity extends TFIDFSimilarity {
+
+    @Override
+    public float tf(float freq) {
+        return freq > 0 ? 1 + (float) Math.log(freq) : 0;
+    }
+
+    @Override
+    public float idf(long docFreq, long docCount) {
+        return (float) (Math.log((docCount + 1) / (double) (docFreq + 1)) + 1.0);
+    }
+
+    @Override
+    public float lengthNorm(int numTerms) {
+        return (float) (1.0 / Math.sqrt(numTerms));
+    }
+
+    @Override
+    public String toString() {
+        return "LogTF";
+    }
+}
@@ -0,0 +1,89 @@
+package me.zookeeper.leader_election.worker;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import me.zookeeper.leader_election.registry.ShardGroups;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps this worker's registry entry current: its live document count and the
+ * shard groups it belongs to. Only written when one of them changed, so an idle
+ * cluster sends the leader's registry cache nothing.
+ */
+@Component
+public class NodeMetadataPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeMetadataPublisher.class);
+
+    private final ServiceRegistry serviceRegistry;
+    private final ShardGroups shardGroups;
+    private final Worker worker;
+    private final long intervalMs;
+
+    private long publishedDocs = Long.MIN_VALUE;
+    private List<String> publishedShards;
+    private ScheduledExecutorService scheduler;
+
+    public NodeMetadataPublisher(ServiceRegistry serviceRegistry,
+                                 ShardGroups shardGroups,
+                                 Worker worker,
+                                 @Value("${registry.metadata-interval-ms:10000}") long intervalMs) {
+        this.serviceRegistry = serviceRegistry;
+        this.shardGroups = shardGroups;
+        this.worker = worker;
+        this.intervalMs = intervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalMs <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "node-metadata");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::publish, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    private void publish() {
+        String address = serviceRegistry.getCurrentAddress();
+        if (address == null) {
+            return; // not registered (yet), or the leader
+        }
+        try {
+            long docs = worker.liveDocs();
+            List<String> shards = new ArrayList<>();
+            shardGroups.getGroups().forEach(g -> {
+                if (g.getMembers().contains(address)) shards.add(g.getId());
+            });
+            if (docs == publishedDocs && Objects.equals(shards, publishedShards)) {
+                return;
+            }
+            serviceRegistry.updateMetadata(docs, shards);
+            publishedDocs = docs;
+            publishedShards = shards;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("Publishing node metadata failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package me.zookeeper.leader_election.worker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The syntaxes a search can be written in, by name:
+ * <ul>
+ *   <li>{@code plain} — words, each of them optional; the default, and how every search was read before;</li>
+ *   <li>{@code lucene} — Lucene's classic syntax: {@code "annual report"~2}, {@code +required -excluded},
+ *       {@code AND / OR / NOT}, {@code path:reports\/*}, {@code wild?ard}, {@code prefix*}, {@code fuzzy~1};</li>
+ *   <li>{@code json} — the same clauses as a tree, e.g.
+ *       {@code {"bool":{"must":[{"phrase":"annual report"}],"must_not":[{"prefix":{"field":"path","value":"drafts/"}}]}}}.</li>
+ * </ul>
+ * JSON clauses are {@code bool} ({@code must}, {@code should}, {@code must_not}, {@code filter}),
+ * {@code match} ({@code query}, {@code operator} and|or), {@code phrase} ({@code query}, {@code slop}),
+ * {@code term}, {@code prefix}, {@code wildcard} and {@code fuzzy} ({@code value}, {@code edits} 1|2), each with
+ * an optional {@code field}; a string instead of an object is the query or value of {@code contents}.
+ * <p>
+ * Only {@code contents} (analysed with the query chain) and {@code path} (taken as is) can be searched. What
+ * one query may cost is bounded: at most {@code maxClauses} clauses, each prefix, wildcard, fuzzy or range
+ * clause rewritten to its {@code maxExpansions} most useful terms, no leading wildcard and no regular
+ * expressions. Anything else throws IllegalArgumentException.
+ */
+public final class QueryLanguage {
+
+    public static final String PLAIN = "plain";
+    public static final String LUCENE = "lucene";
+    public static final String JSON = "json";
+
+    private static final String CONTENTS = "contents";
+    private static final Set<String> FIELDS = Set.of(CONTENTS, DocumentManifest.PATH);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // what the leader checks queries with: it has no index, so no analysis chain of its own
+    private static final Analyzer STANDARD = new StandardAnalyzer();
+
+    private final Analyzer analyzer;
+    private final int maxClauses;
+    private final int maxExpansions;
+
+    /** @param contentsAnalyzer the query side of the index's analysis chain */
+    QueryLanguage(Analyzer contentsAnalyzer, int maxClauses, int maxExpansions) {
+        this.analyzer = new PerFieldAnalyzerWrapper(contentsAnalyzer, Map.of(DocumentManifest.PATH, new KeywordAnalyzer()));
+        this.maxClauses = maxClauses;
+        this.maxExpansions = maxExpansions;
+    }
+
+    /** The syntax named, {@code plain} if none; throws IllegalArgumentException if unknown. */
+    public static String syntax(String name) {
+        if (name == null || name.isBlank()) {
+            return PLAIN;
+        }
+        String s = name.trim().toLowerCase(Locale.ROOT);
+        if (!s.equals(PLAIN) && !s.equals(LUCENE) && !s.equals(JSON)) {
+            throw new IllegalArgumentException("Unknown query syntax '" + name + "' (plain, lucene, json)");
+        }
+        return s;
+    }
+
+    /**
+     * Parses {@code query} with the standard chain in place of a worker's, so
+     * the leader can turn down a malformed or too costly query before sending
+     * it to every shard.
+     */
+    public static void validate(String syntax, String query, int maxClauses, int maxExpansions) {
+        new QueryLanguage(STANDARD, maxClauses, maxExpansions).parse(syntax, query);
+    }
+
+    Query parse(String syntax, String query) {
+        String s = syntax(syntax);
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        Query parsed;
+        try {
+            parsed = switch (s) {
+                case LUCENE -> new GuardedParser().parse(query);
+                case JSON -> build(MAPPER.readTree(query), new GuardedParser());
+                default -> new GuardedParser().parse(QueryParser.escape(query));
+            };
+        } catch (ParseException | JsonProcessingException e) {
+            // the parser's message lists every token it expected; the first line says what was wrong
+            throw new IllegalArgumentException("Malformed " + s + " query: " + e.getMessage().lines().findFirst().orElse(""), e);
+        } catch (IndexSearcher.TooManyClauses e) {
+            throw new IllegalArgumentException("Query has more than " + IndexSearcher.getMaxClauseCount() + " clauses", e);
+        }
+        if (parsed == null) {
+            // every word was a stop word
+            parsed = new BooleanQuery.Builder().build();
+        }
+        int clauses = clauses(parsed);
+        if (clauses > maxClauses) {
+            throw new IllegalArgumentException("Query has " + clauses + " clauses, at most " + maxClauses + " allowed");
+        }
+        return parsed;
+    }
+
+    /* -------------------- JSON -------------------- */
+
+    private Query build(JsonNode node, GuardedParser parser) throws ParseException {
+        if (node == null || !node.isObject() || node.size() != 1) {
+            throw new ParseException("a clause is an object with one key: bool, match, phrase, term, prefix, wildcard or fuzzy");
+        }
+        Map.Entry<String, JsonNode> clause = node.properties().iterator().next();
+        String type = clause.getKey();
+        JsonNode body = clause.getValue();
+        String field = body.isTextual() ? CONTENTS : checked(body.path("field").asText(CONTENTS));
+        switch (type) {
+            case "bool" -> {
+                return bool(body, parser);
+            }
+            case "match" -> {
+                parser.setDefaultOperator("and".equalsIgnoreCase(body.path("operator").asText("or"))
+                        ? QueryParser.Operator.AND : QueryParser.Operator.OR);
+                return parser.getFieldQuery(field, text(type, body, "query"), false);
+            }
+            case "phrase" -> {
+                return parser.getFieldQuery(field, text(type, body, "query"), body.path("slop").asInt(0));
+            }
+            case "term" -> {
+                return new TermQuery(new Term(field, text(type, body, "value")));
+            }
+            case "prefix" -> {
+                return parser.getPrefixQuery(field, text(type, body, "value"));
+            }
+            case "wildcard" -> {
+                return parser.getWildcardQuery(field, text(type, body, "value"));
+            }
+            case "fuzzy" -> {
+                int edits = body.path("edits").asInt(2);
+                if (edits < 1 || edits > 2) {
+                    throw new ParseException("fuzzy edits must be 1 or 2");
+                }
+                return parser.getFuzzyQuery(field, text(type, body, "value"), edits);
+            }
+            default -> throw new ParseException("unknown clause '" + type + "'");
+        }
+    }
+
+    private Query bool(JsonNode body, GuardedParser parser) throws ParseException {
+        if (!body.isObject()) {
+            throw new ParseException("bool takes an object of must, should, must_not and filter");
+        }
+        BooleanQuery.Builder bool = new BooleanQuery.Builder();
+        for (Map.Entry<String, JsonNode> e : body.properties()) {
+            BooleanClause.Occur occur = switch (e.getKey()) {
+                case "must" -> BooleanClause.Occur.MUST;
+                case "should" -> BooleanClause.Occur.SHOULD;
+                case "must_not" -> BooleanClause.Occur.MUST_NOT;
+                case "filter" -> BooleanClause.Occur.FILTER;
+                default -> throw new ParseException("unknown bool occurrence '" + e.getKey() + "'");
+            };
+            // one clause or a list of them
+            Iterable<JsonNode> clauses = e.getValue().isArray() ? e.getValue() : List.of(e.getValue());
+            for (JsonNode c : clauses) {
+                Query q = build(c, parser);
+                if (q != null) {
+                    bool.add(q, occur);
+                }
+            }
+        }
+        return bool.build();
+    }
+
+    private static String text(String type, JsonNode body, String key) throws ParseException {
+        JsonNode value = body.isTextual() ? body : body.get(key);
+        if (value == null || !value.isTextual() || value.asText().isEmpty()) {
+            throw new ParseException(type + " needs a non-empty \"" + key + "\"");
+        }
+        return value.asText();
+    }
+
+    private static String checked(String field) throws ParseException {
+        if (!FIELDS.contains(field)) {
+            throw new ParseException("unknown field '" + field + "' (contents, path)");
+        }
+        return field;
+    }
+
+    // a phrase or an expanding term is one clause, as it is one scorer until rewritten
+    private static int clauses(Query query) {
+        int[] count = {0};
+        query.visit(new QueryVisitor() {
+            @Override
+            public void consumeTerms(Query q, Term... terms) {
+                count[0]++;
+            }
+
+            @Override
+            public void consumeTermsMatching(Query q, String field, Supplier<ByteRunAutomaton> automaton) {
+                count[0]++;
+            }
+
+            @Override
+            public void visitLeaf(Query q) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    // QueryParser keeps state between calls, so one per query; the overrides are the guardrails
+    private final class GuardedParser extends QueryParser {
+
+        GuardedParser() {
+            super(CONTENTS, QueryLanguage.this.analyzer);
+            setAllowLeadingWildcard(false);
+            setMultiTermRewriteMethod(new MultiTermQuery.TopTermsBlendedFreqScoringRewrite(maxExpansions));
+        }
+
+        @Override
+        protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+            return super.getFieldQuery(checked(field), queryText, quoted);
+        }
+
+        @Override
+        protected Query getFieldQuery(String field, String queryText, int slop) throws ParseException {
+            return super.getFieldQuery(checked(field), queryText, slop);
+        }
+
+        @Override
+        protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive,
+                                      boolean endInclusive) throws ParseException {
+            return super.getRangeQuery(checked(field), part1, part2, startInclusive, endInclusive);
+        }
+
+        @Override
+        protected Query getPrefixQuery(String field, String termStr) throws ParseException {
+            return super.getPrefixQuery(checked(field), termStr);
+        }
+
+        @Override
+        protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+            return super.getWildcardQuery(checked(field), termStr);
+        }
+
+        @Override
+        protected Query getFuzzyQuery(String field, String termStr, float minSimilarity) throws ParseException {
+            return super.getFuzzyQuery(checked(field), termStr, minSimilarity);
+        }
+
+        @Override
+        protected Query getRegexpQuery(String field, String termStr) throws ParseException {
+            throw new ParseException("regular expressions are not supported");
+        }
+
+        @Override
+        protected Query newFuzzyQuery(Term term, float minimumSimilarity, int prefixLength) {
+            int edits = FuzzyQuery.floatToEdits(minimumSimilarity, term.text().codePointCount(0, term.text().length()));
+            return new FuzzyQuery(term, edits, prefixLength, maxExpansions, true);
+        }
+    }
+}
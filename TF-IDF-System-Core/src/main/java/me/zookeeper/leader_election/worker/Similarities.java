@@ -0,0 +1,80 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scoring functions a search can ask for, by name:
+ * <ul>
+ *   <li>{@code classic} — Lucene's ClassicSimilarity, TF-IDF with sqrt(tf);</li>
+ *   <li>{@code bm25} or {@code bm25(k1=1.2,b=0.75)} — BM25 with tunable saturation and length normalisation;</li>
+ *   <li>{@code logtf} — TF-IDF with 1 + ln(tf), see {@link LogTfSimilarity}.</li>
+ * </ul>
+ * Each index scores with its worker's {@code search.similarity}. All of them
+ * read the same norms, so a search can also name another one without a
+ * re-index; the leader then sends every shard the same canonical spec, which
+ * with corpus-wide statistics keeps shard scores comparable when they are
+ * merged. Searches that name none rely on the workers sharing the setting.
+ */
+public final class Similarities {
+
+    private static final Pattern BM25 = Pattern.compile(
+            "bm25(?:\\(\\s*k1\\s*=\\s*([0-9.eE+-]+)\\s*,\\s*b\\s*=\\s*([0-9.eE+-]+)\\s*\\))?");
+
+    private Similarities() {}
+
+    /** The spec written one way only, e.g. {@code bm25(k1=1.2,b=0.75)}; throws IllegalArgumentException if unknown. */
+    public static String canonical(String spec) {
+        return describe(parse(spec));
+    }
+
+    /** Builds a spec from a name and optional BM25 parameters (which default to Lucene's 1.2 and 0.75). */
+    public static String spec(String name, Float k1, Float b) {
+        if (k1 == null && b == null) {
+            return canonical(name);
+        }
+        if (!"bm25".equalsIgnoreCase(name.trim())) {
+            throw new IllegalArgumentException("k1 and b only apply to bm25");
+        }
+        return describe(new BM25Similarity(k1 != null ? k1 : 1.2f, b != null ? b : 0.75f));
+    }
+
+    public static Similarity parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("No similarity given");
+        }
+        String s = spec.trim().toLowerCase(Locale.ROOT);
+        switch (s) {
+            case "classic", "tfidf" -> {
+                return new ClassicSimilarity();
+            }
+            case "logtf" -> {
+                return new LogTfSimilarity();
+            }
+            default -> {
+                Matcher m = BM25.matcher(s);
+                if (!m.matches()) {
+                    throw new IllegalArgumentException("Unknown similarity '" + spec + "' (classic, bm25, bm25(k1=..,b=..), logtf)");
+                }
+                try {
+                    return m.group(1) == null ? new BM25Similarity()
+                            : new BM25Similarity(Float.parseFloat(m.group(1)), Float.parseFloat(m.group(2)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad BM25 parameters in '" + spec + "'");
+                }
+            }
+        }
+    }
+
+    private static String describe(Similarity similarity) {
+        if (similarity instanceof BM25Similarity bm25) {
+            return "bm25(k1=" + bm25.getK1() + ",b=" + bm25.getB() + ")";
+        }
+        return similarity instanceof LogTfSimilarity ? "logtf" : "classic";
+    }
+}
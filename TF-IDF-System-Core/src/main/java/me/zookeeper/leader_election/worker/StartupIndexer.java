@@ -0,0 +1,170 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Brings the index in line with the documents directory after a restart,
+ * in the background while the existing index already serves searches.
+ * Only files that are new or whose size / mtime / content hash changed are
+ * re-indexed (on the ingest pool, so across all cores); documents whose file
+ * is gone are deleted. With {@code commitData} set, the analysis chain changed:
+ * every file is re-indexed, and the data is committed once all of them are.
+ */
+class StartupIndexer implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupIndexer.class);
+
+    enum State { PENDING, RUNNING, DONE, FAILED }
+
+    private final Path docsPath;
+    private final Path idxPath;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final IngestPipeline ingest;
+    private final Map<String, String> commitData;
+
+    private volatile State state = State.PENDING;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong reindexed = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    StartupIndexer(Path docsPath, Path idxPath, IndexWriter writer, SearcherManager searcherManager, IngestPipeline ingest,
+                   Map<String, String> commitData) {
+        this.docsPath = docsPath;
+        this.idxPath = idxPath;
+        this.writer = writer;
+        this.searcherManager = searcherManager;
+        this.ingest = ingest;
+        this.commitData = commitData;
+    }
+
+    @Override
+    public void run() {
+        state = State.RUNNING;
+        long start = System.nanoTime();
+        try {
+            Map<String, DocumentManifest.Entry> manifest;
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                manifest = DocumentManifest.read(searcher.getIndexReader());
+            } finally {
+                searcherManager.release(searcher);
+            }
+            log.info("Catch-up indexing: {} documents in the index, walking {}", manifest.size(), docsPath);
+
+            AtomicLong outstanding = new AtomicLong();
+            try (Stream<Path> files = Files.walk(docsPath)) {
+                Iterator<Path> it = files.filter(Files::isRegularFile).filter(p -> !p.startsWith(idxPath)).iterator();
+                while (it.hasNext()) {
+                    Path file = it.next();
+                    scanned.incrementAndGet();
+                    String rel = docsPath.relativize(file).toString();
+                    DocumentManifest.Entry known = manifest.remove(rel);
+                    try {
+                        if (commitData == null && isUnchanged(file, rel, known)) {
+                            unchanged.incrementAndGet();
+                            continue;
+                        }
+                        outstanding.incrementAndGet();
+                        ingest.submit(file, Long.MAX_VALUE).whenComplete((seq, ex) -> {
+                            if (ex != null) {
+                                failed.incrementAndGet();
+                                log.error("Failed to index {}: {}", file, ex.getMessage());
+                            } else {
+                                reindexed.incrementAndGet();
+                            }
+                            if (outstanding.decrementAndGet() == 0) {
+                                synchronized (outstanding) {
+                                    outstanding.notifyAll();
+                                }
+                            }
+                        });
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                        log.error("Failed to check {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+
+            // whatever is left in the manifest has no file any more
+            for (String gone : manifest.keySet()) {
+                writer.deleteDocuments(new Term(DocumentManifest.PATH, gone));
+                deleted.incrementAndGet();
+            }
+
+            synchronized (outstanding) {
+                while (outstanding.get() > 0) {
+                    outstanding.wait(1000);
+                }
+            }
+            if (commitData != null && failed.get() == 0) {
+                // only now does the whole index match the new chain; a crash or failure before this re-analyses again
+                writer.setLiveCommitData(commitData.entrySet());
+            }
+            ingest.commit();
+            // DONE means the catch-up is visible, not just on disk
+            searcherManager.maybeRefreshBlocking();
+            state = State.DONE;
+            log.info("Catch-up indexing done in {} ms: scanned={} unchanged={} reindexed={} deleted={} failed={}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    scanned.get(), unchanged.get(), reindexed.get(), deleted.get(), failed.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state = State.FAILED;
+        } catch (Exception e) {
+            state = State.FAILED;
+            log.error("Catch-up indexing failed", e);
+        }
+    }
+
+    private boolean isUnchanged(Path file, String rel, DocumentManifest.Entry known) throws IOException {
+        if (known == null || known.hash == null) {
+            return false;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attrs.size() != known.size) {
+            return false;
+        }
+        long mtime = attrs.lastModifiedTime().toMillis();
+        if (mtime == known.mtime) {
+            return true;
+        }
+        // touched or copied but maybe not modified: compare content, and remember the new mtime if equal
+        if (Arrays.equals(DocumentManifest.hash(file), known.hash)) {
+            writer.updateNumericDocValue(new Term(DocumentManifest.PATH, rel), DocumentManifest.MTIME, mtime);
+            return true;
+        }
+        return false;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("scanned", scanned.get());
+        status.put("unchanged", unchanged.get());
+        status.put("reindexed", reindexed.get());
+        status.put("deleted", deleted.get());
+        status.put("failed", failed.get());
+        return status;
+    }
+}
@@ -0,0 +1,340 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns a file into the text of its {@code contents} field, as a {@link Reader}
+ * the IndexWriter consumes while it analyses, so no document is ever held in
+ * memory as one String.
+ * <ul>
+ *   <li>UTF-8 text (judged by the first 8 KB) is read straight from disk;</li>
+ *   <li>anything else is parsed by Tika on a bounded pool of its own, with one
+ *       shared {@link AutoDetectParser}, and flows to the reader through a
+ *       small bounded pipe.</li>
+ * </ul>
+ * Both stop after {@code maxChars} characters, and a parse stops after
+ * {@code timeoutMs}: the document is indexed with the text extracted so far,
+ * the parse is interrupted and its input closed. A parse that fails, times out
+ * or finds the pool busy for that long costs that document its text, never the
+ * ingest threads.
+ */
+final class TextExtractor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TextExtractor.class);
+
+    private static final int SNIFF_BYTES = 8192;
+    private static final int CHUNK_CHARS = 8192;
+    private static final int PIPE_CHUNKS = 16;
+    // end of a parse's output
+    private static final char[] EOF = new char[0];
+
+    // thread-safe once built, and building it (loading every parser) is the expensive part
+    private final Parser parser;
+    private final ThreadPoolExecutor pool;
+    // one permit per queued or running parse, like IngestPipeline's slots
+    private final Semaphore slots;
+    private final long timeoutMs;
+    private final long maxChars;
+
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    TextExtractor(int threads, int queueCapacity, long timeoutMs, long maxChars) {
+        this(new AutoDetectParser(), threads, queueCapacity, timeoutMs, maxChars);
+    }
+
+    TextExtractor(Parser parser, int threads, int queueCapacity, long timeoutMs, long maxChars) {
+        this.parser = parser;
+        this.timeoutMs = timeoutMs;
+        this.maxChars = maxChars > 0 ? maxChars : Long.MAX_VALUE;
+        this.slots = new Semaphore(Math.max(1, threads) + Math.max(0, queueCapacity));
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "extract-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /** The file's text; the caller closes the reader once the document is indexed. */
+    Reader open(Path file) throws IOException {
+        if (isUtf8Text(file)) {
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            return new LimitedReader(new InputStreamReader(Files.newInputStream(file), decoder), file);
+        }
+        return parse(file);
+    }
+
+    private Reader parse(Path file) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            if (!slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                log.warn("[extract] No extraction slot within {} ms, indexing {} without text", timeoutMs, file);
+                return Reader.nullReader();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an extraction slot");
+        }
+        Pipe pipe = new Pipe(file, deadline);
+        try {
+            pool.execute(() -> {
+                try {
+                    pipe.run();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw new IOException("Text extractor is closed", e);
+        }
+        return pipe;
+    }
+
+    /** Whether a reader from {@link #open} is fed by a Tika parse rather than read from disk. */
+    static boolean isParsed(Reader reader) {
+        return reader instanceof Pipe;
+    }
+
+    // valid UTF-8 without NULs in the first 8 KB; a multi-byte character cut off at the end does not count against it
+    private static boolean isUtf8Text(Path file) throws IOException {
+        byte[] head = new byte[SNIFF_BYTES];
+        int n;
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(head, 0, head.length);
+        }
+        for (int i = 0; i < n; i++) {
+            if (head[i] == 0) {
+                return false;
+            }
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CoderResult result = decoder.decode(ByteBuffer.wrap(head, 0, n), CharBuffer.allocate(n), n < head.length);
+        return !result.isError();
+    }
+
+    Map<String, Long> stats() {
+        return Map.of("parsed", parsed.get(), "failed", failed.get(), "timedOut", timedOut.get(),
+                "truncated", truncated.get(), "rejected", rejected.get(), "queued", (long) pool.getQueue().size());
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /* -------------------- READERS -------------------- */
+
+    // stops at maxChars, as if the file ended there
+    private final class LimitedReader extends FilterReader {
+        private final Path file;
+        private long remaining = maxChars;
+
+        LimitedReader(Reader in, Path file) {
+            super(in);
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] one = new char[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0];
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(cbuf, off, (int) Math.min(len, remaining));
+            if (n > 0 && (remaining -= n) <= 0) {
+                truncated.incrementAndGet();
+                log.warn("[extract] {} truncated at {} characters", file, maxChars);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Tika writes on an extraction thread, the IndexWriter reads on an ingest
+     * thread; at most {@link #PIPE_CHUNKS} chunks sit in between. Reading past
+     * the deadline, or closing the reader early, cancels the parse.
+     */
+    private final class Pipe extends Reader {
+        private final Path file;
+        private final long deadline;
+        private final BlockingQueue<char[]> chunks = new ArrayBlockingQueue<>(PIPE_CHUNKS);
+        private volatile boolean abandoned;
+        private volatile InputStream input;
+        // the extraction thread while it parses; guarded by this
+        private Thread runner;
+        private char[] current = EOF;
+        private int pos;
+        private boolean done;
+
+        Pipe(Path file, long deadline) {
+            this.file = file;
+            this.deadline = deadline;
+        }
+
+        // on the extraction thread
+        void run() {
+            synchronized (this) {
+                if (abandoned) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            Writer out = new Writer() {
+                @Override
+                public void write(char[] cbuf, int off, int len) throws IOException {
+                    for (int i = off; i < off + len; i += CHUNK_CHARS) {
+                        put(Arrays.copyOfRange(cbuf, i, Math.min(off + len, i + CHUNK_CHARS)));
+                    }
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            int limit = maxChars > Integer.MAX_VALUE ? -1 : (int) maxChars;
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getFileName().toString());
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                input = in;
+                parser.parse(in, new BodyContentHandler(new WriteOutContentHandler(out, limit)), metadata, new ParseContext());
+                parsed.incrementAndGet();
+            } catch (Exception e) {
+                if (WriteLimitReachedException.isWriteLimitReached(e)) {
+                    truncated.incrementAndGet();
+                    log.warn("[extract] {} truncated at {} characters", file, maxChars);
+                } else if (!abandoned) {
+                    failed.incrementAndGet();
+                    log.error("[index] Tika failed to parse {}: {}", file, e.getMessage());
+                }
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    // an interrupt meant for this parse must not reach the pool thread's next one
+                    Thread.interrupted();
+                }
+                try {
+                    put(EOF);
+                } catch (IOException ignored) {
+                    // nobody is reading any more
+                }
+            }
+        }
+
+        private void put(char[] chunk) throws IOException {
+            try {
+                while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    if (abandoned) {
+                        throw new InterruptedIOException("Extraction of " + file + " abandoned");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Extraction of " + file + " interrupted");
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (pos == current.length) {
+                try {
+                    long wait = deadline - System.nanoTime();
+                    char[] next = wait > 0 ? chunks.poll(wait, TimeUnit.NANOSECONDS) : chunks.poll();
+                    if (next == null) {
+                        timedOut.incrementAndGet();
+                        log.warn("[extract] Parsing {} took over {} ms, indexing the text extracted so far", file, timeoutMs);
+                        cancel();
+                        return -1;
+                    }
+                    if (next == EOF) {
+                        done = true;
+                        return -1;
+                    }
+                    current = next;
+                    pos = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    throw new InterruptedIOException("Interrupted reading extracted text of " + file);
+                }
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, cbuf, off, n);
+            pos += n;
+            return n;
+        }
+
+        // interrupts the parse and closes its input: most parsers give up on one or the other
+        private void cancel() {
+            done = true;
+            synchronized (this) {
+                abandoned = true;
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+            InputStream in = input;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // the parse fails on it, which is the point
+                }
+            }
+            chunks.clear();
+        }
+
+        @Override
+        public void close() {
+            if (!done) {
+                cancel();
+            }
+        }
+    }
+}
@@ -1,49 +1,62 @@
 package me.zookeeper.leader_election.worker;
 
 import Document_and_Data.Document;
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.CorpusStats;
 import Document_and_Data.DocumentScoreInfo;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import Document_and_Data.FieldStats;
+import Document_and_Data.SearchRequest;
+import Document_and_Data.TermScore;
+import Document_and_Data.TermStats;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import me.zookeeper.leader_election.config.PhaseTimers;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.*;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 import jakarta.annotation.PostConstruct;
-import org.apache.tika.exception.TikaException;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.sax.BodyContentHandler;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import org.xml.sax.SAXException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.net.URLDecoder;
-import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 @RestController
 @RequestMapping("/worker")
 public class Worker {
 
     private static final Logger log = LoggerFactory.getLogger(Worker.class);
+    // searches over search.slow-query-ms, with their phases
+    private static final Logger slowQueries = LoggerFactory.getLogger("slow-query");
+
+    public static final String GENERATION_HEADER = "X-Index-Generation";
 
     @Value("${mydocument.path}")
     private String DOCUMENTS_PATH;
@@ -51,12 +64,139 @@ public class Worker {
     @Value("${lucene.index.path}")
     private String INDEX_PATH;
 
+    @Value("${search.max-results:1000}")
+    private int maxResults;
+
+    // how stale the shared searcher may get when nobody is waiting / when an upload is waiting on it
+    @Value("${lucene.refresh.max-stale-ms:1000}")
+    private long maxStaleMs;
+
+    @Value("${lucene.refresh.min-stale-ms:25}")
+    private long minStaleMs;
+
+    @Value("${ingest.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int ingestThreads;
+
+    @Value("${ingest.queue-capacity:10000}")
+    private int ingestQueueCapacity;
+
+    // group commit: fsync once per this many docs or this interval, whichever comes first
+    @Value("${ingest.commit-max-docs:500}")
+    private int commitMaxDocs;
+
+    @Value("${ingest.commit-interval-ms:1000}")
+    private long commitIntervalMs;
+
+    @Value("${ingest.durability:refresh}")
+    private String defaultDurability;
+
+    @Value("${ingest.ack-timeout-ms:30000}")
+    private long ackTimeoutMs;
+
+    // reconcile the index with the documents directory on start; off serves the index exactly as committed
+    @Value("${ingest.catch-up-on-start:true}")
+    private boolean catchUpOnStart;
+
+    // text extraction of non-UTF-8 files (PDF, Office, ...) with Tika, see TextExtractor
+    @Value("${extract.threads:2}")
+    private int extractThreads;
+
+    @Value("${extract.queue-capacity:16}")
+    private int extractQueueCapacity;
+
+    @Value("${extract.timeout-ms:30000}")
+    private long extractTimeoutMs;
+
+    // characters of a document's text that are indexed, extracted or not; 0 for no limit
+    @Value("${extract.max-chars:10000000}")
+    private long extractMaxChars;
+
+    // query caches, see /worker/cache-stats
+    @Value("${search.cache.parsed-queries:10000}")
+    private long parsedQueryCacheSize;
+
+    @Value("${search.cache.leaf-topk-max-hits:1000000}")
+    private long leafTopKMaxHits;
+
+    // Lucene's filter cache: none, usage-tracking (cache clauses seen repeatedly) or always
+    @Value("${lucene.query-cache.policy:usage-tracking}")
+    private String queryCachePolicy;
+
+    @Value("${lucene.query-cache.max-queries:1000}")
+    private int queryCacheMaxQueries;
+
+    @Value("${lucene.query-cache.max-ram-mb:64}")
+    private long queryCacheMaxRamMb;
+
+    // analysis chain of the contents field, see AnalysisChain; changing it re-analyses the index on the next start
+    @Value("${analysis.language:}")
+    private String analysisLanguage;
+
+    @Value("${analysis.stopwords:none}")
+    private String analysisStopwords;
+
+    @Value("${analysis.stemming:false}")
+    private boolean analysisStemming;
+
+    @Value("${analysis.ascii-folding:false}")
+    private boolean analysisAsciiFolding;
+
+    @Value("${analysis.shingles:0}")
+    private int analysisShingles;
+
+    // none | terms | positions | offsets; /worker/top-terms needs at least terms
+    @Value("${analysis.term-vectors:none}")
+    private String analysisTermVectors;
+
+    // classic | bm25 | bm25(k1=..,b=..) | logtf, see Similarities; a search request may ask for another
+    @Value("${search.similarity:bm25}")
+    private String similaritySpec;
+
+    // guardrails of the lucene and json query syntaxes, see QueryLanguage
+    @Value("${search.query.max-clauses:1024}")
+    private int queryMaxClauses;
+
+    @Value("${search.query.max-expansions:50}")
+    private int queryMaxExpansions;
+
+    // 0 turns the slow-query log off
+    @Value("${search.slow-query-ms:500}")
+    private long slowQueryMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private Directory luceneDir;
     private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    private IngestPipeline ingest;
+    private TextExtractor extractor;
+    private StartupIndexer startupIndexer;
+    // analyzers are thread-safe; one chain for indexing and one for query parsing
+    private AnalysisChain analysis;
+    private Similarity similarity;
+    // search.similarity written one way only, to tell whether a request asks for something else
+    private String similarityCanonical;
+    private QueryLanguage queryLanguage;
+    private Cache<String, Query> parsedQueries;
+    private LeafTopKCache leafTopK;
+    private LRUQueryCache queryCache;
+    private QueryCachingPolicy cachingPolicy;
+    // search: total and parse / search / fetch; indexing: read (or tika) / index; refreshes that opened a new searcher
+    private Timer searchTimer;
+    private PhaseTimers searchPhases;
+    private PhaseTimers indexPhases;
+    private Timer refreshTimer;
+    private final long startEpoch = System.currentTimeMillis();
 
     @PostConstruct
     public void init() {
         log.info("Initializing Worker. DOCUMENTS_PATH={}  INDEX_PATH={}", DOCUMENTS_PATH, INDEX_PATH);
+        searchTimer = Timer.builder("tfidf.worker.search").register(meterRegistry);
+        searchPhases = new PhaseTimers(meterRegistry, "tfidf.worker.search.phase");
+        indexPhases = new PhaseTimers(meterRegistry, "tfidf.worker.index.phase");
+        refreshTimer = Timer.builder("tfidf.worker.refresh").register(meterRegistry);
         try {
             Path docsPath = Paths.get(DOCUMENTS_PATH).normalize();
             if (!Files.exists(docsPath) || !Files.isDirectory(docsPath)) {
@@ -68,82 +208,394 @@ public class Worker {
             Files.createDirectories(idxPath);
             luceneDir = FSDirectory.open(idxPath);
 
-            Analyzer analyzer = new StandardAnalyzer();
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
+            analysis = AnalysisChain.build(analysisLanguage, analysisStopwords, analysisStemming,
+                    analysisAsciiFolding, analysisShingles, analysisTermVectors);
+            similarity = Similarities.parse(similaritySpec);
+            similarityCanonical = Similarities.canonical(similaritySpec);
+            queryLanguage = new QueryLanguage(analysis.queryAnalyzer(), queryMaxClauses, queryMaxExpansions);
+            IndexWriterConfig config = new IndexWriterConfig(analysis.indexAnalyzer());
+            // all of them encode norms alike, so this only sets the default a search scores with
+            config.setSimilarity(similarity);
+            Map<String, String> indexed = committedUserData(luceneDir);
+            String indexedChain = indexed.getOrDefault(AnalysisChain.COMMIT_KEY, AnalysisChain.DEFAULT_FINGERPRINT);
+            String indexedVectors = indexed.getOrDefault(AnalysisChain.VECTORS_KEY, AnalysisChain.DEFAULT_VECTORS);
+            // a new index is written with the current schema from its first document
+            String indexedSchema = indexed.getOrDefault(AnalysisChain.SCHEMA_KEY,
+                    DirectoryReader.indexExists(luceneDir) ? AnalysisChain.DEFAULT_SCHEMA : AnalysisChain.SCHEMA);
+            boolean rebuild = !indexedVectors.equals(analysis.termVectors()) || !indexedSchema.equals(AnalysisChain.SCHEMA);
+            boolean reanalyze = rebuild || !indexedChain.equals(analysis.fingerprint());
+            if (rebuild) {
+                // a field's documents must all be alike (vectors, doc values): start over from the documents directory
+                log.warn("Index has term vectors '{}' and schema {}, now '{}' and {}: rebuilding it; "
+                                + "searches see only re-indexed documents until done",
+                        indexedVectors, indexedSchema, analysis.termVectors(), AnalysisChain.SCHEMA);
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            } else if (reanalyze) {
+                log.warn("Index was analysed with [{}], now [{}]: re-analysing every document in the background",
+                        indexedChain, analysis.fingerprint());
+            }
             indexWriter = new IndexWriter(luceneDir, config);
+            if (!reanalyze) {
+                indexWriter.setLiveCommitData(analysis.commitData().entrySet());
+            }
 
-            // Index already existing files (skip index dir)
-            log.info("Walking {} to index files…", docsPath);
-            Files.walk(docsPath)
-                    .filter(Files::isRegularFile)
-                    .filter(path -> !path.startsWith(idxPath))
-                    .forEach(path -> {
-                        try {
-                            addDocToIndex(new Document(path.toString()));
-                        } catch (Exception e) {
-                            log.error("Failed to index {}: {}", path, e.getMessage());
-                        }
-                    });
-
-            indexWriter.commit();
-            log.info("Indexing complete. Total docs indexed (RAM): {}", indexWriter.numRamDocs());
+            // one near-real-time searcher shared by all queries, reopened in the background;
+            // it serves the index as last committed while catch-up indexing runs
+            initQueryCaches();
+            searcherManager = new SearcherManager(indexWriter, new SearcherFactory() {
+                @Override
+                public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                    return configure(new IndexSearcher(reader));
+                }
+            });
+            searcherManager.addListener(new ReferenceManager.RefreshListener() {
+                // refreshes are serialised by the manager
+                private long start;
+
+                @Override
+                public void beforeRefresh() {
+                    start = System.nanoTime();
+                }
+
+                @Override
+                public void afterRefresh(boolean didRefresh) {
+                    if (didRefresh) {
+                        refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+            });
+            reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager,
+                    maxStaleMs / 1000.0, minStaleMs / 1000.0);
+            reopenThread.setName("lucene-nrt-reopen");
+            reopenThread.setDaemon(true);
+            reopenThread.start();
+
+            extractor = new TextExtractor(extractThreads, extractQueueCapacity, extractTimeoutMs, extractMaxChars);
+            ingest = new IngestPipeline(indexWriter, reopenThread, path -> addDocToIndex(new Document(path.toString())),
+                    ingestThreads, ingestQueueCapacity, commitMaxDocs, commitIntervalMs, meterRegistry);
+
+            // re-index only what changed on disk since the last run (skip index dir)
+            if (catchUpOnStart || reanalyze) {
+                startupIndexer = new StartupIndexer(docsPath, idxPath, indexWriter, searcherManager, ingest,
+                        reanalyze ? analysis.commitData() : null);
+                Thread catchUp = new Thread(startupIndexer, "startup-indexer");
+                catchUp.setDaemon(true);
+                catchUp.start();
+            }
 
         } catch (Exception e) {
             log.error("Error during Worker init:", e);
         }
     }
 
+    @PreDestroy
+    public void close() {
+        try {
+            if (ingest != null) ingest.close();
+            if (extractor != null) extractor.close();
+            if (reopenThread != null) reopenThread.close();
+            if (searcherManager != null) searcherManager.close();
+            if (indexWriter != null) {
+                indexWriter.commit();
+                indexWriter.close();
+            }
+        } catch (IOException e) {
+            log.error("Error closing the index", e);
+        }
+    }
+
+
     /* -------------------- DOWNLOAD -------------------- */
+    // supports Range / If-Range (resume) and If-None-Match / If-Modified-Since (304); see FileSender
     @GetMapping("/download")
-    public ResponseEntity<Resource> workerDownload(@RequestParam String path) throws IOException {
+    public void workerDownload(@RequestParam String path, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
         // ensure we decode (in case leader encoded or double-encoded)
         String decoded = URLDecoder.decode(path, StandardCharsets.UTF_8);
-        log.info("[download] requested path='{}' (decoded='{}')", path, decoded);
+        log.debug("[download] requested path='{}' (decoded='{}') range={}", path, decoded, request.getHeader(HttpHeaders.RANGE));
 
         Path base   = Paths.get(DOCUMENTS_PATH).normalize();
         Path target = base.resolve(decoded).normalize();
 
         boolean safe   = target.startsWith(base);
-        boolean exists = Files.exists(target);
+        boolean exists = Files.isRegularFile(target);
         log.debug("[download] base='{}', target='{}', safe={}, exists={}", base, target, safe, exists);
 
         if (!safe || !exists) {
-            return ResponseEntity.notFound().build();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-
-        Resource res = new FileSystemResource(target.toFile());
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + target.getFileName() + "\"")
-                .contentLength(res.contentLength())
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(res);
+        FileSender.send(target, request, response);
     }
 
 
     /* -------------------- UPLOAD -------------------- */
     @PostMapping("/upload")
-    public ResponseEntity<String> upload(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<String> upload(@RequestParam("file") MultipartFile file,
+                                         @RequestParam(required = false) String durability) {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body("Empty file");
         }
+        IngestPipeline.Durability mode;
+        try {
+            mode = IngestPipeline.Durability.parse(durability != null ? durability : defaultDurability);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Unknown durability '" + durability + "', expected enqueue, refresh or commit");
+        }
         String filename = file.getOriginalFilename();
-        log.info("[upload] Received '{}' size={} bytes", filename, file.getSize());
+        log.debug("[upload] Received '{}' size={} bytes (durability={})", filename, file.getSize(), mode);
+        Path base = Paths.get(DOCUMENTS_PATH).normalize();
+        Path idx  = Paths.get(INDEX_PATH).normalize();
+        Path dest;
+        try {
+            dest = filename == null || filename.isBlank() ? null : base.resolve(filename).normalize();
+        } catch (InvalidPathException e) {
+            dest = null;
+        }
+        if (dest == null || !dest.startsWith(base) || dest.startsWith(idx) || dest.equals(base)) {
+            return ResponseEntity.badRequest().body("Invalid filename '" + filename + "': outside the documents directory");
+        }
         try {
-            Path dest = Paths.get(DOCUMENTS_PATH, filename).normalize();
             Files.copy(file.getInputStream(), dest, StandardCopyOption.REPLACE_EXISTING);
 
-            synchronized (indexWriter) {
-                addDocToIndex(new Document(dest.toString()));
-                indexWriter.commit();
+            CompletableFuture<Long> indexed = ingest.submit(dest);
+            if (mode == IngestPipeline.Durability.ENQUEUE) {
+                log.debug("[upload] Queued {} for indexing", dest);
+                return ResponseEntity.accepted().body("Queued");
+            }
+
+            long seq = indexed.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+            boolean acked = mode == IngestPipeline.Durability.COMMIT
+                    ? ingest.awaitCommit(seq, ackTimeoutMs)
+                    : ingest.awaitSearchable(seq, ackTimeoutMs);
+            if (!acked) {
+                log.warn("[upload] Indexed {} but not {} within {} ms", dest, mode, ackTimeoutMs);
+                return ResponseEntity.accepted().body("Indexed, not yet " + (mode == IngestPipeline.Durability.COMMIT ? "committed" : "searchable"));
             }
-            log.info("[upload] Uploaded & indexed {}", dest);
+            log.debug("[upload] Uploaded & indexed {}", dest);
             return ResponseEntity.ok("Uploaded");
+        } catch (RejectedExecutionException e) {
+            log.warn("[upload] Ingest queue full, rejecting '{}'", filename);
+            return ResponseEntity.status(503).body("Ingest queue full, retry later");
         } catch (Exception e) {
             log.error("Upload failed", e);
             return ResponseEntity.status(500).body("Upload failed: " + e.getMessage());
         }
     }
+
+    /* -------------------- BULK UPLOAD -------------------- */
+    // body is a zip stream (sent by the leader); entries keep their relative names and are indexed as they arrive
+    @PostMapping(value = "/upload-batch", consumes = "application/zip")
+    public ResponseEntity<BulkUploadSummary> uploadBatch(InputStream body,
+                                                         @RequestParam(required = false) String durability) {
+        IngestPipeline.Durability mode;
+        try {
+            mode = IngestPipeline.Durability.parse(durability != null ? durability : defaultDurability);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Path base = Paths.get(DOCUMENTS_PATH).normalize();
+        Path idx  = Paths.get(INDEX_PATH).normalize();
+        BulkUploadSummary summary = new BulkUploadSummary();
+        Map<String, CompletableFuture<Long>> pending = new LinkedHashMap<>();
+
+        try (ZipInputStream zip = new ZipInputStream(body)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                String name = entry.getName();
+                Path dest = base.resolve(name).normalize();
+                if (!dest.startsWith(base) || dest.startsWith(idx)) {
+                    summary.addFailure(name + ": outside the documents directory");
+                    continue;
+                }
+                try {
+                    Files.createDirectories(dest.getParent());
+                    Files.copy(zip, dest, StandardCopyOption.REPLACE_EXISTING);
+                    // wait for room rather than reject: the leader is streaming and cannot resend
+                    pending.put(name, ingest.submit(dest, ackTimeoutMs));
+                } catch (IOException | RejectedExecutionException e) {
+                    summary.addFailure(name + ": " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            summary.addFailure("batch interrupted");
+        } catch (IOException e) {
+            log.error("[upload-batch] Reading batch stream failed", e);
+            summary.addFailure("batch stream: " + e.getMessage());
+        }
+
+        long lastSeq = -1;
+        for (Map.Entry<String, CompletableFuture<Long>> p : pending.entrySet()) {
+            if (mode == IngestPipeline.Durability.ENQUEUE) {
+                summary.addIndexed(null, 1);
+                continue;
+            }
+            try {
+                lastSeq = Math.max(lastSeq, p.getValue().get(ackTimeoutMs, TimeUnit.MILLISECONDS));
+                summary.addIndexed(null, 1);
+            } catch (Exception e) {
+                summary.addFailure(p.getKey() + ": " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        }
+        try {
+            if (lastSeq >= 0 && mode == IngestPipeline.Durability.COMMIT) {
+                ingest.awaitCommit(lastSeq, ackTimeoutMs);
+            } else if (lastSeq >= 0 && mode == IngestPipeline.Durability.REFRESH) {
+                ingest.awaitSearchable(lastSeq, ackTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.info("[upload-batch] {}", summary);
+        return ResponseEntity.ok(summary);
+    }
+
+    /* -------------------- DELETE -------------------- */
+    // removes documents (index entries and files), e.g. after the leader moved them to the shard that owns them
+    @PostMapping("/delete")
+    public ResponseEntity<BulkUploadSummary> delete(@RequestBody List<String> paths,
+                                                    @RequestParam(required = false) String durability) {
+        IngestPipeline.Durability mode;
+        try {
+            mode = IngestPipeline.Durability.parse(durability != null ? durability : defaultDurability);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Path base = Paths.get(DOCUMENTS_PATH).normalize();
+        Path idx  = Paths.get(INDEX_PATH).normalize();
+        BulkUploadSummary summary = new BulkUploadSummary();
+        long lastSeq = -1;
+        for (String name : paths) {
+            Path target = base.resolve(name).normalize();
+            if (!target.startsWith(base) || target.startsWith(idx)) {
+                summary.addFailure(name + ": outside the documents directory");
+                continue;
+            }
+            try {
+                // file first: if the index delete then fails, a restart's catch-up drops the entry,
+                // whereas a file left behind would be indexed again next to the moved copy
+                Files.deleteIfExists(target);
+                lastSeq = indexWriter.deleteDocuments(new Term(DocumentManifest.PATH, base.relativize(target).toString()));
+                summary.addIndexed(null, 1);
+            } catch (IOException e) {
+                summary.addFailure(name + ": " + e.getMessage());
+            }
+        }
+        try {
+            if (lastSeq >= 0 && mode == IngestPipeline.Durability.COMMIT) {
+                ingest.commit();
+            } else if (lastSeq >= 0 && mode == IngestPipeline.Durability.REFRESH) {
+                ingest.awaitSearchable(lastSeq, ackTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            summary.addFailure("commit: " + e.getMessage());
+        }
+        log.info("[delete] {}", summary);
+        return ResponseEntity.ok(summary);
+    }
+
+    // one "path<TAB>sha-256" line per live document; the leader diffs two replicas' listings to sync a new one
+    @GetMapping(value = "/documents", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<StreamingResponseBody> documents() {
+        StreamingResponseBody body = out -> {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                DocumentManifest.forEach(searcher.getIndexReader(), (path, entry) -> {
+                    writer.write(path);
+                    writer.write('\t');
+                    writer.write(entry.hash != null ? HexFormat.of().formatHex(entry.hash) : "");
+                    writer.write('\n');
+                });
+                writer.flush();
+            } finally {
+                searcherManager.release(searcher);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(body);
+    }
+
+    /**
+     * The k terms of one document with the highest TF-IDF weight, read from its
+     * stored term vector: sqrt(freq) * (1 + ln((docCount + 1) / (docFreq + 1))),
+     * with this shard's document frequencies. 404 if the document is not here,
+     * 409 if it was indexed without term vectors.
+     */
+    @GetMapping("/top-terms")
+    public ResponseEntity<List<TermScore>> topTerms(@RequestParam String path, @RequestParam(defaultValue = "20") int k) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs hit = searcher.search(new TermQuery(new Term(DocumentManifest.PATH, path)), 1);
+            if (hit.scoreDocs.length == 0) {
+                return ResponseEntity.notFound().build();
+            }
+            IndexReader reader = searcher.getIndexReader();
+            Terms vector = reader.termVectors().get(hit.scoreDocs[0].doc, "contents");
+            if (vector == null) {
+                log.debug("[top-terms] '{}' has no term vector (analysis.term-vectors={})", path, analysisTermVectors);
+                return ResponseEntity.status(409).build();
+            }
+            CollectionStatistics cs = searcher.collectionStatistics("contents");
+            long docCount = cs == null ? reader.numDocs() : cs.docCount();
+
+            PriorityQueue<TermScore> top = new PriorityQueue<>(Comparator.comparingDouble(TermScore::getScore));
+            int limit = Math.max(1, Math.min(k, maxResults));
+            TermsEnum te = vector.iterator();
+            for (BytesRef term = te.next(); term != null; term = te.next()) {
+                long freq = te.totalTermFreq();
+                int docFreq = reader.docFreq(new Term("contents", term));
+                double idf = 1 + Math.log((docCount + 1.0) / (docFreq + 1.0));
+                top.add(new TermScore(term.utf8ToString(), freq, docFreq, Math.sqrt(freq) * idf));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<TermScore> result = new ArrayList<>(top);
+            result.sort(Comparator.comparingDouble(TermScore::getScore).reversed());
+            return ResponseEntity.ok(result);
+        } catch (IOException e) {
+            log.error("[top-terms] failed for '{}': {}", path, e.getMessage());
+            return ResponseEntity.status(500).build();
+        } finally {
+            release(searcher);
+        }
+    }
+
+    // searchable as soon as the existing index is open; catch-up indexing may still be running
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, Object>> ready() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("searchable", searcherManager != null);
+        body.put("catchUp", startupIndexer != null ? startupIndexer.status() : Map.of());
+        body.put("queued", ingest != null ? ingest.queuedDocs() : 0);
+        body.put("extraction", extractor != null ? extractor.stats() : Map.of());
+        body.put("analysis", analysis != null ? analysis.fingerprint() : null);
+        body.put("similarity", similarity != null ? similarity.toString() : null);
+        return searcherManager != null ? ResponseEntity.ok(body) : ResponseEntity.status(503).body(body);
+    }
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        CacheStats parsed = parsedQueries.stats();
+        body.put("parsedQueries", Map.of("hits", parsed.hitCount(), "misses", parsed.missCount(),
+                "hitRate", parsed.hitRate(), "entries", parsedQueries.estimatedSize()));
+        body.put("leafTopK", leafTopK.stats());
+        if (queryCache != null) {
+            body.put("luceneQueryCache", Map.of("hits", queryCache.getHitCount(), "misses", queryCache.getMissCount(),
+                    "cachedQueries", queryCache.getCacheCount(), "evictions", queryCache.getEvictionCount(),
+                    "ramBytes", queryCache.ramBytesUsed()));
+        }
+        return ResponseEntity.ok(body);
+    }
+
     @GetMapping("/index-size")
     public ResponseEntity<Long> getIndexSize() {
         try {
@@ -152,18 +604,21 @@ public class Worker {
                 return ResponseEntity.ok(0L);
             }
 
-            long totalSize = Files.walk(indexPath)
-                    .filter(Files::isRegularFile)
-                    .mapToLong(path -> {
-                        try {
-                            return Files.size(path);
-                        } catch (IOException e) {
-                            log.warn("Error reading size of {}", path);
-                            return 0L;
-                        }
-                    }).sum();
+            long totalSize;
+            try (Stream<Path> files = Files.walk(indexPath)) {
+                totalSize = files
+                        .filter(Files::isRegularFile)
+                        .mapToLong(path -> {
+                            try {
+                                return Files.size(path);
+                            } catch (IOException e) {
+                                log.warn("Error reading size of {}", path);
+                                return 0L;
+                            }
+                        }).sum();
+            }
 
-            log.info("Index size for {} is {} bytes", indexPath, totalSize);
+            log.debug("Index size for {} is {} bytes", indexPath, totalSize);
             return ResponseEntity.ok(totalSize);
         } catch (Exception e) {
             log.error("Failed to get index size", e);
@@ -173,21 +628,98 @@ public class Worker {
 
     /* -------------------- SEARCH -------------------- */
     @PostMapping("/process")
-    public List<DocumentScoreInfo> processDocuments(@RequestBody String searchQuery) {
-        log.info("Received query: \"{}\"", searchQuery);
+    public ResponseEntity<List<DocumentScoreInfo>> processDocuments(@RequestBody String searchQuery,
+                                                    @RequestParam(defaultValue = "10") int k,
+                                                    @RequestParam(required = false) String syntax) {
+        SearchRequest request = new SearchRequest(searchQuery, k, null);
+        request.setSyntax(syntax);
+        return processSearchRequest(request);
+    }
+
+    @PostMapping(value = "/process", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<DocumentScoreInfo>> processSearchRequest(@RequestBody SearchRequest request) {
+        log.debug("Received {} query: \"{}\" (k={}, globalStats={}, similarity={})", request.getSyntax(), request.getQuery(),
+                request.getK(), request.getStats() != null, request.getSimilarity());
+        PhaseTimers.Laps laps = searchPhases.start();
         try {
-            List<DocumentScoreInfo> results = searchIndex(searchQuery);
-            log.info("Returning {} hits for query \"{}\"", results.size(), searchQuery);
-            return results;
+            // read before searching: the hits are from this generation or a newer one, never older
+            String generation = indexGeneration();
+            int k = Math.max(1, Math.min(request.getK(), maxResults));
+            // the configured similarity is the shared searcher's own; only another one needs a searcher of its own
+            Similarity scoring = request.getSimilarity() == null
+                    || Similarities.canonical(request.getSimilarity()).equals(similarityCanonical)
+                    ? similarity : Similarities.parse(request.getSimilarity());
+            List<DocumentScoreInfo> results = searchIndex(request.getQuery(), request.getSyntax(), k, request.getStats(),
+                    scoring, laps);
+            long nanos = laps.elapsedNanos();
+            searchTimer.record(nanos, TimeUnit.NANOSECONDS);
+            if (slowQueryMs > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(slowQueryMs)) {
+                slowQueries.warn("{} ms \"{}\" k={} globalStats={} | {}", String.format("%.1f", nanos / 1e6),
+                        request.getQuery(), k, request.getStats() != null, laps.breakdown());
+            }
+            log.debug("Returning {} hits for query \"{}\"", results.size(), request.getQuery());
+            return ResponseEntity.ok().header(GENERATION_HEADER, generation).body(results);
+        } catch (IllegalArgumentException | IndexSearcher.TooManyClauses e) {
+            // a malformed query, or one whose wildcards expand past the clause limit
+            log.warn("Rejecting query \"{}\": {}", request.getQuery(), e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
-            log.error("Search failed for query \"{}\": {}", searchQuery, e.getMessage());
-            return Collections.emptyList();
+            // a failure, not an empty shard: the leader marks the answer partial and tries another replica
+            log.error("Search failed for query \"{}\": {}", request.getQuery(), e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    // changes whenever a refresh makes new uploads visible; lets the leader tell whether cached hits are still current
+    @GetMapping("/generation")
+    public ResponseEntity<String> generation() {
+        try {
+            return ResponseEntity.ok(indexGeneration());
+        } catch (IOException e) {
+            log.error("Reading index generation failed: {}", e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    // phase one of a global-statistics search: local term/field statistics for the query's terms
+    @PostMapping("/term-stats")
+    public ResponseEntity<CorpusStats> termStats(@RequestBody String searchQuery,
+                                                 @RequestParam(required = false) String syntax) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            IndexReader reader = searcher.getIndexReader();
+            Set<Term> terms = new HashSet<>();
+            searcher.rewrite(parseQuery(syntax, searchQuery)).visit(QueryVisitor.termCollector(terms));
+
+            CorpusStats stats = new CorpusStats();
+            Set<String> fields = new HashSet<>();
+            for (Term t : terms) {
+                stats.getTerms().add(new TermStats(t.field(), t.text(), reader.docFreq(t), reader.totalTermFreq(t)));
+                fields.add(t.field());
+            }
+            for (String field : fields) {
+                CollectionStatistics cs = searcher.collectionStatistics(field);
+                if (cs != null) {
+                    stats.getFields().add(new FieldStats(field, cs.maxDoc(), cs.docCount(), cs.sumTotalTermFreq(), cs.sumDocFreq()));
+                }
+            }
+            log.debug("Term statistics for \"{}\": {}", searchQuery, stats);
+            return ResponseEntity.ok(stats);
+        } catch (IllegalArgumentException | IndexSearcher.TooManyClauses e) {
+            log.warn("Rejecting query \"{}\": {}", searchQuery, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Term statistics failed for query \"{}\": {}", searchQuery, e.getMessage());
+            return ResponseEntity.status(500).build();
+        } finally {
+            release(searcher);
         }
     }
 
     /* -------------------- Helpers -------------------- */
 
-    private void addDocToIndex(Document doc) throws IOException {
+    private long addDocToIndex(Document doc) throws IOException {
         Path base = Paths.get(DOCUMENTS_PATH).normalize();
         Path abs  = Paths.get(doc.getName()).normalize();
 
@@ -195,48 +727,174 @@ public class Worker {
         String rel = abs.startsWith(base) ? base.relativize(abs).toString() : abs.getFileName().toString();
         log.debug("[index] Storing path='{}' (relative of {})", rel, base);
 
-        String text;
+        // the text is streamed into the field while the writer analyses it, so reading (or waiting for Tika)
+        // is timed inside the reader and the rest of updateDocument is analysis and indexing
+        long start = System.nanoTime();
+        Reader source = extractor.open(abs);
+        boolean parsed = TextExtractor.isParsed(source);
+        try (TimedReader text = new TimedReader(source)) {
+            long opened = System.nanoTime() - start;
+            org.apache.lucene.document.Document ldoc = new org.apache.lucene.document.Document();
+            DocumentManifest.addPath(ldoc, rel);
+            ldoc.add(new Field("contents", text, analysis.contentsType()));
+            DocumentManifest.addFields(ldoc, abs);
+
+            long seq = indexWriter.updateDocument(new Term(DocumentManifest.PATH, rel), ldoc);
+            long read = opened + text.nanos;
+            indexPhases.record(parsed ? "tika" : "read", read);
+            indexPhases.record("index", System.nanoTime() - start - read);
+            log.debug("[index] Indexed {}", rel);
+            return seq;
+        }
+    }
+
+    // user data of the last commit; empty for a new index, or one from before the analysis chain was recorded
+    private static Map<String, String> committedUserData(Directory dir) throws IOException {
+        return DirectoryReader.indexExists(dir) ? SegmentInfos.readLatestCommit(dir).getUserData() : Map.of();
+    }
+
+    // reader version of the current searcher, prefixed with this process's start so a restart never reuses one
+    private String indexGeneration() throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
         try {
-            text = Files.readString(abs);
-        } catch (MalformedInputException e) {
-            try (InputStream in = Files.newInputStream(abs)) {
-                AutoDetectParser parser = new AutoDetectParser();
-                BodyContentHandler handler = new BodyContentHandler(-1);
-                parser.parse(in, handler, new Metadata());
-                text = handler.toString();
-                log.debug("[index] Tika extracted {} chars from {}", text.length(), abs);
-            } catch (TikaException | SAXException ex) {
-                log.error("[index] Tika failed to parse {}: {}", abs, ex.getMessage());
-                text = "";
-            }
+            return startEpoch + "." + ((DirectoryReader) searcher.getIndexReader()).getVersion();
+        } finally {
+            searcherManager.release(searcher);
         }
+    }
 
-        org.apache.lucene.document.Document ldoc = new org.apache.lucene.document.Document();
-        ldoc.add(new StringField("path", rel, Field.Store.YES));
-        ldoc.add(new TextField("contents", text, Field.Store.NO));
+    /** Live documents in the searchable index, or -1 while it is not open. */
+    long liveDocs() throws IOException {
+        if (searcherManager == null) {
+            return -1;
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
 
-        indexWriter.updateDocument(new Term("path", rel), ldoc);
-        log.debug("[index] Indexed {}", rel);
+    private void initQueryCaches() {
+        parsedQueries = Caffeine.newBuilder().maximumSize(parsedQueryCacheSize).recordStats().build();
+        leafTopK = new LeafTopKCache(leafTopKMaxHits);
+        switch (queryCachePolicy.trim().toLowerCase()) {
+            case "none" -> cachingPolicy = null;
+            case "always" -> cachingPolicy = new QueryCachingPolicy() {
+                @Override
+                public void onUse(Query query) {
+                }
+
+                @Override
+                public boolean shouldCache(Query query) {
+                    return true;
+                }
+            };
+            default -> cachingPolicy = new UsageTrackingQueryCachingPolicy();
+        }
+        if (cachingPolicy != null) {
+            queryCache = new LRUQueryCache(queryCacheMaxQueries, queryCacheMaxRamMb * 1024 * 1024);
+        }
+        log.info("Query caches: parsed={} leafTopKHits={} luceneQueryCache={}", parsedQueryCacheSize, leafTopKMaxHits, queryCachePolicy);
     }
 
-    private List<DocumentScoreInfo> searchIndex(String queryString) throws Exception {
-        try (DirectoryReader reader = DirectoryReader.open(luceneDir)) {
-            IndexSearcher searcher = new IndexSearcher(reader);
-            Analyzer analyzer = new StandardAnalyzer();
-            QueryParser parser = new QueryParser("contents", analyzer);
-            Query query = parser.parse(QueryParser.escape(queryString));
-            log.debug("Parsed Lucene query: {}", query);
+    // every searcher, including the per-request global-statistics ones, shares the filter cache
+    private IndexSearcher configure(IndexSearcher searcher) {
+        searcher.setSimilarity(similarity);
+        searcher.setQueryCache(queryCache);
+        if (cachingPolicy != null) {
+            searcher.setQueryCachingPolicy(cachingPolicy);
+        }
+        return searcher;
+    }
 
-            TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-            log.info("Lucene found {} total hits", topDocs.totalHits.value);
+    // a parsed Query is immutable and can be shared; the same text means different things in each syntax
+    private Query parseQuery(String syntax, String queryString) {
+        String key = QueryLanguage.syntax(syntax) + ':' + queryString;
+        Query cached = parsedQueries.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        Query query = queryLanguage.parse(syntax, queryString);
+        parsedQueries.put(key, query);
+        return query;
+    }
 
-            List<DocumentScoreInfo> results = new ArrayList<>();
-            for (ScoreDoc sd : topDocs.scoreDocs) {
-                org.apache.lucene.document.Document hit = searcher.doc(sd.doc);
-                String relPath = hit.get("path");  // relative
-                results.add(new DocumentScoreInfo(new Document(relPath), sd.score));
+    private List<DocumentScoreInfo> searchIndex(String queryString, String syntax, int k, CorpusStats stats, Similarity scoring,
+                                                PhaseTimers.Laps laps) throws Exception {
+        IndexSearcher shared = searcherManager.acquire();
+        try {
+            IndexSearcher searcher = shared;
+            if (stats != null) {
+                searcher = configure(new GlobalStatsIndexSearcher(shared.getIndexReader(), stats));
+            } else if (scoring != similarity) {
+                searcher = configure(new IndexSearcher(shared.getIndexReader()));
+            }
+            if (scoring != similarity) {
+                searcher.setSimilarity(scoring);
             }
+            Query query = parseQuery(syntax, queryString);
+            log.debug("Parsed Lucene query: {}", query);
+            laps.lap("parse");
+
+            // per segment: only the best k are collected (counting stops at k so block-max WAND can skip
+            // the rest), and segments scored for this query before with the same statistics are reused
+            TopDocs topDocs = leafTopK.search(searcher, query, k);
+            laps.lap("search");
+            log.debug("Lucene found {}{} total hits, returning top {}", topDocs.totalHits.value,
+                    topDocs.totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO ? "+" : "", topDocs.scoreDocs.length);
+
+            // relative paths, from doc values: no stored-fields block is decompressed per hit
+            String[] paths = DocumentManifest.paths(searcher.getIndexReader(), topDocs.scoreDocs);
+            List<DocumentScoreInfo> results = new ArrayList<>(paths.length);
+            for (int i = 0; i < paths.length; i++) {
+                if (paths[i] != null) {
+                    results.add(new DocumentScoreInfo(new Document(paths[i]), topDocs.scoreDocs[i].score));
+                }
+            }
+            laps.lap("fetch");
             return results;
+        } finally {
+            searcherManager.release(shared);
+        }
+    }
+
+    private void release(IndexSearcher searcher) {
+        if (searcher == null) return;
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            log.warn("Failed to release searcher: {}", e.getMessage());
+        }
+    }
+
+    // time spent inside read(): disk reads for plain text, waiting on the parse for Tika
+    private static final class TimedReader extends FilterReader {
+        private long nanos;
+
+        TimedReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(cbuf, off, len);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
         }
     }
 }
@@ -0,0 +1,71 @@
+package me.zookeeper.leader_election.config;
+
+import Document_and_Data.Document;
+import Document_and_Data.DocumentScoreInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryHitsHttpMessageConverterTest {
+
+	private static final Type HITS = new ParameterizedTypeReference<List<DocumentScoreInfo>>() {}.getType();
+	private static final Type STRINGS = new ParameterizedTypeReference<List<String>>() {}.getType();
+
+	private final BinaryHitsHttpMessageConverter converter = new BinaryHitsHttpMessageConverter();
+
+	private static DocumentScoreInfo hit(String name, double score) {
+		return new DocumentScoreInfo(new Document(name), score);
+	}
+
+	private List<DocumentScoreInfo> roundTrip(List<DocumentScoreInfo> hits) throws IOException {
+		MockHttpOutputMessage out = new MockHttpOutputMessage();
+		converter.write(hits, HITS, BinaryHitsHttpMessageConverter.MEDIA_TYPE, out);
+		return converter.read(HITS, null, new MockHttpInputMessage(out.getBodyAsBytes()));
+	}
+
+	@Test
+	void roundTripsPathsAndScores() throws IOException {
+		List<DocumentScoreInfo> hits = List.of(hit("reports/2024/a.pdf", 3.25), hit("top.txt", 1.5),
+				hit("reports/2024/b.pdf", 0.125), hit("é/ü.txt", 0));
+
+		List<DocumentScoreInfo> decoded = roundTrip(hits);
+
+		assertEquals(hits.size(), decoded.size());
+		for (int i = 0; i < hits.size(); i++) {
+			assertEquals(hits.get(i).getDocument(), decoded.get(i).getDocument());
+			assertEquals((float) hits.get(i).getScore(), (float) decoded.get(i).getScore());
+		}
+	}
+
+	@Test
+	void sendsEachDirectoryOnce() throws IOException {
+		String dir = "a/very/long/shared/directory/name/";
+		MockHttpOutputMessage out = new MockHttpOutputMessage();
+		converter.write(List.of(hit(dir + "1", 1), hit(dir + "2", 1), hit(dir + "3", 1)), HITS, null, out);
+
+		assertTrue(out.getBodyAsBytes().length < 2 * dir.length());
+	}
+
+	@Test
+	void onlyHandlesHitListsAskedForByMediaType() {
+		assertTrue(converter.canWrite(HITS, List.class, BinaryHitsHttpMessageConverter.MEDIA_TYPE));
+		assertFalse(converter.canWrite(STRINGS, List.class, BinaryHitsHttpMessageConverter.MEDIA_TYPE));
+		assertFalse(converter.canWrite(HITS, List.class, MediaType.APPLICATION_JSON));
+		assertFalse(converter.canRead(STRINGS, null, BinaryHitsHttpMessageConverter.MEDIA_TYPE));
+	}
+
+	@Test
+	void rejectsForeignBodies() {
+		assertThrows(HttpMessageNotReadableException.class,
+				() -> converter.read(HITS, null, new MockHttpInputMessage("[]".getBytes())));
+	}
+}
@@ -0,0 +1,36 @@
+package me.zookeeper.leader_election.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhaseTimersTest {
+
+	@Test
+	void lapsAreRecordedPerPhase() throws InterruptedException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		PhaseTimers timers = new PhaseTimers(registry, "test.phase");
+		PhaseTimers.Laps laps = timers.start();
+		Thread.sleep(5);
+		laps.lap("parse");
+		laps.lap("search");
+		laps.add("search", TimeUnit.MILLISECONDS.toNanos(2));
+
+		assertEquals(1, registry.get("test.phase").tag("phase", "parse").timer().count());
+		assertEquals(2, registry.get("test.phase").tag("phase", "search").timer().count());
+		assertTrue(registry.get("test.phase").tag("phase", "parse").timer().totalTime(TimeUnit.MILLISECONDS) >= 5);
+		assertTrue(laps.elapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+	}
+
+	@Test
+	void breakdownListsPhasesInOrder() {
+		PhaseTimers.Laps laps = new PhaseTimers(new SimpleMeterRegistry(), "test.phase").start();
+		laps.add("stats", 1_500_000);
+		laps.add("scatter", 12_000_000);
+		laps.add("stats", 500_000);
+		assertEquals(String.format("stats=%.2f ms scatter=%.2f ms", 2.0, 12.0), laps.breakdown());
+	}
+}
@@ -0,0 +1,33 @@
+package me.zookeeper.leader_election.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceContextTest {
+
+	@AfterEach
+	void clear() {
+		MDC.clear();
+	}
+
+	@Test
+	void wrappedTasksSeeTheCallersTraceId() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			MDC.put(TraceContext.MDC_KEY, "abc123");
+			assertEquals("abc123", pool.submit(TraceContext.wrap(TraceContext::current)).get());
+			MDC.clear();
+			// and the pool thread does not keep it
+			assertNull(pool.submit(TraceContext.wrap(TraceContext::current)).get());
+			assertNull(pool.submit(() -> MDC.get(TraceContext.MDC_KEY)).get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
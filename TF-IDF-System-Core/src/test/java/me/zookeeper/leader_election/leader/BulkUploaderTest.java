@@ -0,0 +1,55 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.WorkerNode;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BulkUploaderTest {
+
+	private final ServiceRegistry registry = mock(ServiceRegistry.class);
+	private final RestTemplate rest = mock(RestTemplate.class);
+	private final BulkUploader uploader = new BulkUploader(rest, registry, new DocumentLocator(100), 10, 1 << 20);
+	private final Map<String, WorkerNode> nodes = new LinkedHashMap<>();
+
+	@AfterEach
+	void stop() {
+		uploader.shutdown();
+	}
+
+	@Test
+	void loadsComeFromTheRegistryNotFromTheWorkers() {
+		node("a", 40, 1);
+		node("b", 10, 1);
+		node("c", 25, 1);
+		when(registry.getNodes()).thenAnswer(inv -> Map.copyOf(nodes));
+		Shard g1 = new Shard("g1", List.of("a", "b"));
+		Shard g2 = new Shard("g2", List.of("c", "gone"));
+
+		Map<Shard, Long> loads = uploader.shardLoads(List.of(g1, g2));
+		// a shard counts as its fullest replica; unregistered replicas are left out
+		assertEquals(Map.of(new Shard("g1", List.of("a", "b")), 40L, new Shard("g2", List.of("c")), 25L), loads);
+
+		// what was sent since a worker last published is added, until it publishes again
+		uploader.sent(new Shard("g2", List.of("c")), 20);
+		assertEquals(45L, uploader.shardLoads(List.of(g2)).values().iterator().next());
+		node("c", 45, 2);
+		assertEquals(45L, uploader.shardLoads(List.of(g2)).values().iterator().next());
+		verifyNoInteractions(rest);
+	}
+
+	private void node(String address, long docs, long updatedAt) {
+		WorkerNode n = new WorkerNode(address);
+		n.setDocCount(docs);
+		n.setUpdatedAt(updatedAt);
+		nodes.put(address, n);
+	}
+}
@@ -0,0 +1,73 @@
+package me.zookeeper.leader_election.leader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+	private static final int KEYS = 20_000;
+
+	private static String key(int i) {
+		return "dir" + (i % 37) + "/doc-" + i + ".txt";
+	}
+
+	@Test
+	void emptyRingHasNoOwner() {
+		assertNull(new HashRing(List.of(), 64).owner("a.txt"));
+	}
+
+	@Test
+	void placementDependsOnlyOnTheNodes() {
+		HashRing a = new HashRing(List.of("g_1", "g_2", "g_3"), 64);
+		HashRing b = new HashRing(List.of("g_3", "g_1", "g_2"), 64);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(a.owner(key(i)), b.owner(key(i)));
+		}
+	}
+
+	@Test
+	void spreadsKeysEvenly() {
+		HashRing ring = new HashRing(List.of("g_1", "g_2", "g_3", "g_4"), 128);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.owner(key(i)), 1, Integer::sum);
+		}
+		assertEquals(4, counts.size());
+		for (int count : counts.values()) {
+			assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2, "unbalanced: " + counts);
+		}
+	}
+
+	@Test
+	void addingANodeOnlyMovesKeysToIt() {
+		HashRing before = new HashRing(List.of("g_1", "g_2", "g_3"), 128);
+		HashRing after = new HashRing(List.of("g_1", "g_2", "g_3", "g_4"), 128);
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String was = before.owner(key(i));
+			String now = after.owner(key(i));
+			if (!was.equals(now)) {
+				assertEquals("g_4", now);
+				moved++;
+			}
+		}
+		assertTrue(moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2, "moved " + moved);
+	}
+
+	@Test
+	void removingANodeOnlyMovesItsKeys() {
+		HashRing before = new HashRing(List.of("g_1", "g_2", "g_3"), 128);
+		HashRing after = new HashRing(List.of("g_1", "g_3"), 128);
+		for (int i = 0; i < KEYS; i++) {
+			String was = before.owner(key(i));
+			if (!was.equals("g_2")) {
+				assertEquals(was, after.owner(key(i)));
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.WorkerNode;
+import me.zookeeper.leader_election.registry.RebalanceCheckpoints;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RebalancerTest {
+
+	private final ServiceRegistry registry = mock(ServiceRegistry.class);
+	private final ShardGroupManager groups = mock(ShardGroupManager.class);
+	private final BulkUploader uploader = mock(BulkUploader.class);
+	private final WorkerHealth health = mock(WorkerHealth.class);
+	private final RestTemplate rest = mock(RestTemplate.class);
+	private final List<Shard> shards = new ArrayList<>(List.of(new Shard("g1", List.of("a")), new Shard("g2", List.of("b"))));
+
+	private Rebalancer rebalancer(String strategy) {
+		when(registry.getAllServiceAddresses()).thenReturn(List.of("a", "b"));
+		when(groups.placementShards()).thenAnswer(inv -> List.copyOf(shards));
+		when(health.byLatency(any())).thenAnswer(inv -> new ArrayList<String>(inv.getArgument(0)));
+		return new Rebalancer(registry, groups, new DocumentPlacement(strategy, 16), uploader, mock(GenerationTracker.class),
+				health, mock(RebalanceCheckpoints.class), rest, 60_000, 10, 0, 600_000, true, 0.1);
+	}
+
+	@Test
+	void failedPassIsNotRetriedOnEveryCheck() throws Exception {
+		Rebalancer rebalancer = rebalancer("hash");
+		// a document on g1 that the ring gives to g2, and g2 cannot be written to
+		DocumentPlacement placement = new DocumentPlacement("hash", 16);
+		String misplaced = null;
+		for (int i = 0; misplaced == null; i++) {
+			if (placement.owner("doc" + i + ".txt", shards).id().equals("g2")) {
+				misplaced = "doc" + i + ".txt";
+			}
+		}
+		when(uploader.documents("a", Integer.MAX_VALUE)).thenReturn(Map.of(misplaced, "h1"));
+		when(uploader.documents("b", Integer.MAX_VALUE)).thenReturn(Map.of());
+		when(uploader.upload(anyList(), any(), eq("refresh"), any())).thenThrow(new ResourceAccessException("down"));
+
+		rebalancer.check();
+		rebalancer.check();
+		rebalancer.check();
+		verify(uploader, times(1)).documents("a", Integer.MAX_VALUE);
+
+		// a new ring does not wait for the failed one's delay
+		shards.add(new Shard("g3", List.of("c")));
+		when(uploader.documents("c", Integer.MAX_VALUE)).thenReturn(Map.of());
+		rebalancer.check();
+		verify(uploader, times(2)).documents("a", Integer.MAX_VALUE);
+	}
+
+	@Test
+	void leastLoadedMovesFromTheFullestShardToTheEmptiest() throws Exception {
+		Rebalancer rebalancer = rebalancer("least-loaded");
+		// what the registry would say: g2 just joined, empty
+		Map<String, Long> counts = new HashMap<>(Map.of("g1", 40L, "g2", 0L));
+		when(uploader.shardLoads(anyList())).thenAnswer(inv -> {
+			Map<Shard, Long> loads = new LinkedHashMap<>();
+			for (Shard s : shards) loads.put(s, counts.get(s.id()));
+			return loads;
+		});
+		doAnswer(inv -> counts.merge(((Shard) inv.getArgument(0)).id(), inv.getArgument(1), Long::sum))
+				.when(uploader).sent(any(), anyLong());
+		int[] listed = {0};
+		when(uploader.documents(eq("a"), anyInt())).thenAnswer(inv -> {
+			Map<String, String> docs = new LinkedHashMap<>();
+			for (int i = 0; i < (int) inv.getArgument(1); i++) docs.put("doc" + listed[0]++ + ".txt", "h");
+			return docs;
+		});
+		when(uploader.upload(anyList(), any(), eq("refresh"), any())).thenAnswer(inv -> {
+			BulkUploadSummary s = new BulkUploadSummary();
+			s.addIndexed("b", 10);
+			return s;
+		});
+		when(uploader.writeToReplicas(any(), any())).thenAnswer(inv -> {
+			Function<String, Object> write = inv.getArgument(1);
+			Map<String, Object> done = new LinkedHashMap<>();
+			for (String w : ((Shard) inv.getArgument(0)).replicas()) done.put(w, write.apply(w));
+			return done;
+		});
+		when(rest.postForObject(anyString(), any(), eq(BulkUploadSummary.class))).thenReturn(new BulkUploadSummary());
+
+		Map<String, WorkerNode> nodes = new HashMap<>(Map.of("a", node("a", 1), "b", node("b", 1)));
+		when(registry.getNodes()).thenAnswer(inv -> Map.copyOf(nodes));
+
+		rebalancer.check();
+
+		assertEquals(Map.of("g1", 20L, "g2", 20L), counts);
+		verify(uploader, times(2)).upload(eq(List.of(shards.get(1))), any(), eq("refresh"), any());
+		verify(rest, times(2)).postForObject(eq("a/worker/delete?durability=refresh"), any(), eq(BulkUploadSummary.class));
+
+		// counts that do not include the moves yet are not acted on
+		counts.put("g2", 0L);
+		rebalancer.check();
+		verify(uploader, times(2)).upload(anyList(), any(), anyString(), any());
+		// once both workers published again: even counts need nothing, uneven ones are evened out
+		nodes.put("a", node("a", 2));
+		nodes.put("b", node("b", 2));
+		counts.put("g2", 20L);
+		rebalancer.check();
+		verify(uploader, times(2)).upload(anyList(), any(), anyString(), any());
+		counts.put("g1", 30L);
+		counts.put("g2", 10L);
+		rebalancer.check();
+		verify(uploader, times(3)).upload(anyList(), any(), anyString(), any());
+	}
+
+	private static WorkerNode node(String address, long updatedAt) {
+		WorkerNode n = new WorkerNode(address);
+		n.setUpdatedAt(updatedAt);
+		return n;
+	}
+}
@@ -0,0 +1,82 @@
+package me.zookeeper.leader_election.leader;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScatterGatherTest {
+
+	private final CountDownLatch called = new CountDownLatch(1);
+	private final CountDownLatch answer = new CountDownLatch(1);
+	private final ExecutorService caller = Executors.newSingleThreadExecutor();
+
+	@AfterEach
+	void release() {
+		answer.countDown();
+		caller.shutdownNow();
+	}
+
+	private static ScatterGather scatterGather(int threads, int maxThreads) {
+		return new ScatterGather(new WorkerHealth(false, 5, 0.5, 2000, 30000), new SimpleMeterRegistry(),
+				threads, maxThreads, 5000, false, 95, 20, 200);
+	}
+
+	@Test
+	void slowWorkerDoesNotDelayAConcurrentGather() throws Exception {
+		ScatterGather scatterGather = scatterGather(1, 16);
+		// the only warm thread is stuck in a call that, like a socket read, ignores interrupts
+		Future<ScatterGather.Gathered<String>> first = caller.submit(() -> scatterGather.gather(List.of("slow"), this::call));
+		assertTrue(called.await(5, TimeUnit.SECONDS));
+
+		long start = System.nanoTime();
+		ScatterGather.Gathered<String> second = scatterGather.gather(List.of("fast"), this::call);
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(Map.of("fast", "fast"), second.getResults());
+		assertTrue(ms < 1000, "second gather took " + ms + " ms");
+		assertFalse(first.isDone());
+		answer.countDown();
+		assertEquals(Map.of("slow", "slow"), first.get(5, TimeUnit.SECONDS).getResults());
+		scatterGather.shutdown();
+	}
+
+	@Test
+	void callsPastTheMaxThreadsAreMissingAtOnce() throws Exception {
+		ScatterGather scatterGather = scatterGather(1, 1);
+		caller.submit(() -> scatterGather.gather(List.of("slow"), this::call));
+		assertTrue(called.await(5, TimeUnit.SECONDS));
+
+		long start = System.nanoTime();
+		ScatterGather.Gathered<String> second = scatterGather.gather(List.of("fast"), this::call);
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(List.of("fast"), second.getMissing());
+		assertTrue(ms < 1000, "second gather took " + ms + " ms");
+		scatterGather.shutdown();
+	}
+
+	private String call(String worker) {
+		if (worker.equals("slow")) {
+			called.countDown();
+			boolean interrupted = false;
+			while (true) {
+				try {
+					answer.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return worker;
+	}
+}
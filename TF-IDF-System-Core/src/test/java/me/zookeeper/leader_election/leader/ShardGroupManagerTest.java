@@ -0,0 +1,67 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.BulkUploadSummary;
+import Document_and_Data.ShardGroup;
+import me.zookeeper.leader_election.registry.ServiceRegistry;
+import me.zookeeper.leader_election.registry.ShardGroups;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ShardGroupManagerTest {
+
+	private final ServiceRegistry registry = mock(ServiceRegistry.class);
+	private final ShardGroups groups = mock(ShardGroups.class);
+	private final BulkUploader uploader = mock(BulkUploader.class);
+	private final RestTemplate rest = mock(RestTemplate.class);
+	private final List<ShardGroup> stored = new ArrayList<>();
+	private ShardGroupManager manager;
+
+	@AfterEach
+	void stop() {
+		manager.shutdown();
+	}
+
+	@Test
+	void replicaThatWasAwayLosesWhatWasDeletedMeanwhile() throws Exception {
+		ShardGroup group = new ShardGroup(List.of("a", "b"));
+		group.setId("g1");
+		stored.add(group);
+		when(groups.getGroups()).thenAnswer(inv -> List.copyOf(stored));
+		doAnswer(inv -> {
+			stored.set(0, inv.getArgument(0));
+			return null;
+		}).when(groups).save(any());
+		when(uploader.upload(anyList(), any(), eq("commit"))).thenReturn(new BulkUploadSummary());
+		when(rest.postForObject(anyString(), any(), eq(BulkUploadSummary.class))).thenReturn(new BulkUploadSummary());
+
+		// the grace period is long and ticks only run when the test calls them
+		manager = new ShardGroupManager(registry, groups, uploader, rest, 2, 60_000, 3_600_000);
+		manager.start();
+
+		when(registry.getAllServiceAddresses()).thenReturn(List.of("a"));
+		manager.tick();
+		// while b is away, old.txt is deleted from a and new.txt uploaded
+		when(uploader.documents("a", Integer.MAX_VALUE)).thenReturn(Map.of("keep.txt", "h1", "new.txt", "h3"));
+		when(uploader.documents("b", Integer.MAX_VALUE)).thenReturn(Map.of("keep.txt", "h1", "old.txt", "h2"));
+		when(registry.getAllServiceAddresses()).thenReturn(List.of("a", "b"));
+		manager.tick();
+
+		verify(uploader, timeout(5_000)).fromWorker("a", Set.of("new.txt"));
+		verify(rest, timeout(5_000)).postForObject(eq("b/worker/delete?durability=commit"),
+				argThat(e -> ((HttpEntity<?>) e).getBody().equals(List.of("old.txt"))), eq(BulkUploadSummary.class));
+		// only in sync, and searched again, once the deletion went through
+		verify(groups, timeout(5_000).times(2)).save(any());
+		assertTrue(stored.get(0).getSyncing().isEmpty());
+	}
+}
@@ -0,0 +1,59 @@
+package me.zookeeper.leader_election.leader;
+
+import Document_and_Data.Document;
+import Document_and_Data.DocumentScoreInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKMergerTest {
+
+	private static DocumentScoreInfo hit(String name, double score) {
+		return new DocumentScoreInfo(new Document(name), score);
+	}
+
+	private static List<String> names(List<DocumentScoreInfo> hits) {
+		return hits.stream().map(h -> h.getDocument().getName()).collect(Collectors.toList());
+	}
+
+	@Test
+	void mergesShardsByScore() {
+		TopKMerger merger = new TopKMerger(3, 0);
+		merger.addAll(List.of(hit("a", 5), hit("b", 1)));
+		merger.addAll(List.of(hit("c", 4), hit("d", 3), hit("e", 0.5)));
+
+		assertEquals(List.of("a", "c", "d"), names(merger.page()));
+	}
+
+	@Test
+	void appliesOffsetAfterRanking() {
+		TopKMerger merger = new TopKMerger(2, 2);
+		merger.addAll(List.of(hit("a", 5), hit("b", 4), hit("c", 3)));
+		merger.addAll(List.of(hit("d", 2), hit("e", 1)));
+
+		assertEquals(List.of("c", "d"), names(merger.page()));
+	}
+
+	@Test
+	void keepsBestScoreForDuplicateDocuments() {
+		TopKMerger merger = new TopKMerger(2, 0);
+		merger.addAll(List.of(hit("a", 1), hit("b", 2)));
+		merger.addAll(List.of(hit("a", 3)));
+
+		List<DocumentScoreInfo> page = merger.page();
+		assertEquals(List.of("a", "b"), names(page));
+		assertEquals(3, page.get(0).getScore());
+	}
+
+	@Test
+	void offsetBeyondResultsIsEmpty() {
+		TopKMerger merger = new TopKMerger(5, 10);
+		merger.addAll(List.of(hit("a", 1)));
+
+		assertTrue(merger.page().isEmpty());
+	}
+}
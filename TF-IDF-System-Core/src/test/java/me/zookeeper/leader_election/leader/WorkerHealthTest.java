@@ -0,0 +1,83 @@
+package me.zookeeper.leader_election.leader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkerHealthTest {
+
+	private static final long MS = 1_000_000;
+
+	private static WorkerHealth health() {
+		return new WorkerHealth(true, 3, 0.5, 50, 400);
+	}
+
+	private static void fail(WorkerHealth h, String worker, int times) {
+		for (int i = 0; i < times; i++) {
+			h.record(worker, 10 * MS, false);
+		}
+	}
+
+	@Test
+	void opensAfterConsecutiveFailures() {
+		WorkerHealth h = health();
+		fail(h, "a", 2);
+		assertTrue(h.tryAcquire("a"));
+		fail(h, "a", 1);
+		assertFalse(h.isAvailable("a"));
+		assertFalse(h.tryAcquire("a"));
+	}
+
+	@Test
+	void successResetsTheFailureCount() {
+		WorkerHealth h = health();
+		fail(h, "a", 2);
+		h.record("a", 10 * MS, true);
+		fail(h, "a", 2);
+		assertTrue(h.tryAcquire("a"));
+	}
+
+	@Test
+	void halfOpenLetsOneProbeThrough() throws InterruptedException {
+		WorkerHealth h = health();
+		fail(h, "a", 3);
+		Thread.sleep(60);
+		assertTrue(h.isAvailable("a"));
+		assertTrue(h.tryAcquire("a"));
+		assertFalse(h.tryAcquire("a"), "only one probe at a time");
+		h.recordOutcome("a", true);
+		assertTrue(h.tryAcquire("a"));
+		assertTrue(h.tryAcquire("a"));
+	}
+
+	@Test
+	void failedProbeReopensForLonger() throws InterruptedException {
+		WorkerHealth h = health();
+		fail(h, "a", 3);
+		Thread.sleep(60);
+		assertTrue(h.tryAcquire("a"));
+		h.recordOutcome("a", false);
+		Thread.sleep(60);
+		assertFalse(h.tryAcquire("a"), "open for 100 ms after the failed probe");
+		Thread.sleep(60);
+		assertTrue(h.tryAcquire("a"));
+	}
+
+	@Test
+	void openCircuitsAreOrderedLast() {
+		WorkerHealth h = health();
+		h.record("fast", 1 * MS, true);
+		h.record("slow", 50 * MS, true);
+		fail(h, "down", 3);
+		assertEquals(List.of("fast", "slow", "down"), h.byLatency(List.of("down", "slow", "fast")));
+	}
+
+	@Test
+	void disabledBreakerNeverOpens() {
+		WorkerHealth h = new WorkerHealth(false, 1, 0.5, 50, 400);
+		fail(h, "a", 10);
+		assertTrue(h.tryAcquire("a"));
+	}
+}
@@ -0,0 +1,60 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisChainTest {
+
+	private static final String TEXT = "The Café owners were running faster races";
+
+	private static List<String> tokens(Analyzer analyzer, String text) throws IOException {
+		List<String> out = new ArrayList<>();
+		try (TokenStream ts = analyzer.tokenStream("contents", text)) {
+			CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				out.add(term.toString());
+			}
+			ts.end();
+		}
+		return out;
+	}
+
+	@Test
+	void defaultChainIsStandardAnalyzer() throws IOException {
+		AnalysisChain chain = AnalysisChain.build("", "none", false, false, 0, "none");
+		assertEquals(tokens(new StandardAnalyzer(), TEXT), tokens(chain.indexAnalyzer(), TEXT));
+		assertEquals(AnalysisChain.DEFAULT_FINGERPRINT, chain.fingerprint());
+		assertFalse(chain.storesTermVectors());
+	}
+
+	@Test
+	void stopwordsStemmingAndFolding() throws IOException {
+		AnalysisChain chain = AnalysisChain.build("english", "default", true, true, 0, "positions");
+		assertEquals(List.of("cafe", "owner", "run", "faster", "race"), tokens(chain.indexAnalyzer(), TEXT));
+		assertEquals(tokens(chain.indexAnalyzer(), TEXT), tokens(chain.queryAnalyzer(), TEXT));
+		assertTrue(chain.contentsType().storeTermVectorPositions());
+		assertNotEquals(AnalysisChain.DEFAULT_FINGERPRINT, chain.fingerprint());
+	}
+
+	@Test
+	void shinglesAreIndexedButNotQueried() throws IOException {
+		AnalysisChain chain = AnalysisChain.build("", "none", false, false, 2, "terms");
+		assertTrue(tokens(chain.indexAnalyzer(), "hash ring").contains("hash ring"));
+		assertEquals(List.of("hash", "ring"), tokens(chain.queryAnalyzer(), "hash ring"));
+	}
+
+	@Test
+	void stemmingNeedsALanguage() {
+		assertThrows(IllegalArgumentException.class, () -> AnalysisChain.build("", "none", true, false, 0, "none"));
+	}
+}
@@ -0,0 +1,51 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentManifestTest {
+
+	@Test
+	void pathsFollowTheHitsAcrossSegments() throws IOException {
+		try (Directory dir = new ByteBuffersDirectory();
+		     IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+			// one segment per commit
+			for (int segment = 0; segment < 3; segment++) {
+				for (int i = 0; i < 4; i++) {
+					Document doc = new Document();
+					DocumentManifest.addPath(doc, "dir" + segment + "/doc" + i + ".txt");
+					writer.addDocument(doc);
+				}
+				writer.commit();
+			}
+			writer.deleteDocuments(new Term(DocumentManifest.PATH, "dir1/doc2.txt"));
+			writer.commit();
+
+			try (DirectoryReader reader = DirectoryReader.open(dir)) {
+				assertEquals(3, reader.leaves().size());
+				// out of doc-ID order, as a top-k by score would be
+				ScoreDoc[] hits = {new ScoreDoc(9, 3f), new ScoreDoc(0, 2f), new ScoreDoc(5, 1f), new ScoreDoc(4, 0.5f)};
+				assertArrayEquals(new String[]{"dir2/doc1.txt", "dir0/doc0.txt", "dir1/doc1.txt", "dir1/doc0.txt"},
+						DocumentManifest.paths(reader, hits));
+
+				List<String> live = new ArrayList<>();
+				DocumentManifest.forEach(reader, (path, entry) -> live.add(path));
+				assertEquals(11, live.size());
+				assertFalse(live.contains("dir1/doc2.txt"));
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package me.zookeeper.leader_election.worker;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSenderTest {
+
+	@TempDir
+	Path dir;
+
+	private Path file;
+	private String etag;
+
+	@BeforeEach
+	void write() throws IOException {
+		file = Files.writeString(dir.resolve("doc.txt"), "0123456789", StandardCharsets.US_ASCII);
+		etag = FileSender.etag(10, Files.getLastModifiedTime(file).toMillis());
+	}
+
+	@Test
+	void singleRange() throws IOException {
+		MockHttpServletResponse response = send(get("bytes=2-4"));
+		assertEquals(206, response.getStatus());
+		assertEquals("bytes 2-4/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals(3, response.getContentLengthLong());
+		assertEquals("234", response.getContentAsString());
+	}
+
+	@Test
+	void suffixRange() throws IOException {
+		MockHttpServletResponse response = send(get("bytes=-3"));
+		assertEquals(206, response.getStatus());
+		assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals("789", response.getContentAsString());
+	}
+
+	@Test
+	void rangePastTheEndIsNotSatisfiable() throws IOException {
+		MockHttpServletResponse response = send(get("bytes=10-20"));
+		assertEquals(416, response.getStatus());
+		assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void severalRangesGetTheWholeFile() throws IOException {
+		MockHttpServletResponse response = send(get("bytes=0-1,4-5"));
+		assertEquals(200, response.getStatus());
+		assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals("0123456789", response.getContentAsString());
+	}
+
+	@Test
+	void staleIfRangeGetsTheWholeFile() throws IOException {
+		MockHttpServletRequest request = get("bytes=2-4");
+		request.addHeader(HttpHeaders.IF_RANGE, FileSender.etag(9, 0));
+		MockHttpServletResponse response = send(request);
+		assertEquals(200, response.getStatus());
+		assertEquals("0123456789", response.getContentAsString());
+
+		// the current validator keeps the range
+		request = get("bytes=2-4");
+		request.addHeader(HttpHeaders.IF_RANGE, etag);
+		assertEquals(206, send(request).getStatus());
+	}
+
+	@Test
+	void currentCopyIsNotModified() throws IOException {
+		MockHttpServletRequest request = get(null);
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+		MockHttpServletResponse response = send(request);
+		assertEquals(304, response.getStatus());
+		assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void sendfileHandsTheRangeToTheConnector() throws IOException {
+		MockHttpServletRequest request = get("bytes=2-4");
+		request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		MockHttpServletResponse response = send(request);
+
+		assertEquals(206, response.getStatus());
+		assertEquals(3, response.getContentLengthLong());
+		assertEquals(file.toFile().getCanonicalPath(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(2L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+		// exclusive, as Tomcat expects
+		assertEquals(5L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void withoutSendfileTheBytesAreCopied() throws IOException {
+		MockHttpServletRequest request = get("bytes=2-4");
+		MockHttpServletResponse response = send(request);
+
+		assertNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals("234", response.getContentAsString());
+	}
+
+	private static MockHttpServletRequest get(String range) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/worker/documents/doc.txt");
+		if (range != null) {
+			request.addHeader(HttpHeaders.RANGE, range);
+		}
+		return request;
+	}
+
+	private MockHttpServletResponse send(MockHttpServletRequest request) throws IOException {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FileSender.send(file, request, response);
+		return response;
+	}
+}
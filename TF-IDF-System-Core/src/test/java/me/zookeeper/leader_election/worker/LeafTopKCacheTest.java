@@ -0,0 +1,107 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeafTopKCacheTest {
+
+	private final Query query = new TermQuery(new Term("contents", "zebra"));
+
+	@Test
+	void addingToTheQueriedFieldChangesTheScores() throws IOException {
+		try (Directory dir = new ByteBuffersDirectory();
+			 IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+			writer.addDocument(doc("p0", "zebra other words"));
+			writer.addDocument(doc("p1", "zebra zebra"));
+			writer.commit();
+			LeafTopKCache cache = new LeafTopKCache(1_000);
+
+			DirectoryReader reader = DirectoryReader.open(writer);
+			TopDocs before = cache.search(new IndexSearcher(reader), query, 10);
+
+			// a new segment: the old one keeps its reader key, but the query's docFreq and docCount move
+			writer.addDocument(doc("p2", "zebra"));
+			DirectoryReader refreshed = DirectoryReader.openIfChanged(reader, writer);
+			assertNotNull(refreshed);
+			reader.close();
+			IndexSearcher searcher = new IndexSearcher(refreshed);
+			TopDocs after = cache.search(searcher, query, 10);
+
+			assertSameHits(searcher.search(query, 10), after);
+			assertNotEquals(score(before, 0), score(after, 0));
+			assertEquals(0L, cache.stats().get("hits"));
+			refreshed.close();
+		}
+	}
+
+	@Test
+	void deleteOnlyRefreshReusesTheUntouchedSegments() throws IOException {
+		try (Directory dir = new ByteBuffersDirectory();
+			 IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+			for (int segment = 0; segment < 3; segment++) {
+				writer.addDocument(doc("p" + segment + "a", "zebra other words"));
+				writer.addDocument(doc("p" + segment + "b", "zebra zebra"));
+				writer.commit();
+			}
+			LeafTopKCache cache = new LeafTopKCache(1_000);
+
+			DirectoryReader reader = DirectoryReader.open(writer);
+			assertEquals(3, reader.leaves().size());
+			cache.search(new IndexSearcher(reader), query, 10);
+
+			// counts include deleted documents until a merge, so only the segment with the delete is scored again
+			writer.deleteDocuments(new Term(DocumentManifest.PATH, "p0a"));
+			DirectoryReader refreshed = DirectoryReader.openIfChanged(reader, writer);
+			assertNotNull(refreshed);
+			reader.close();
+			IndexSearcher searcher = new IndexSearcher(refreshed);
+			TopDocs after = cache.search(searcher, query, 10);
+
+			assertSameHits(searcher.search(query, 10), after);
+			assertEquals(2L, cache.stats().get("hits"));
+			refreshed.close();
+		}
+	}
+
+	private static Document doc(String path, String text) {
+		Document d = new Document();
+		d.add(new StringField(DocumentManifest.PATH, path, Field.Store.YES));
+		d.add(new TextField("contents", text, Field.Store.NO));
+		return d;
+	}
+
+	private static void assertSameHits(TopDocs expected, TopDocs actual) {
+		assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+		for (int i = 0; i < expected.scoreDocs.length; i++) {
+			assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+			assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+		}
+	}
+
+	private static float score(TopDocs top, int doc) {
+		for (var sd : top.scoreDocs) {
+			if (sd.doc == doc) {
+				return sd.score;
+			}
+		}
+		throw new AssertionError("doc " + doc + " not found");
+	}
+}
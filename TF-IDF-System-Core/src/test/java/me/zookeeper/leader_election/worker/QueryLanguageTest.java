@@ -0,0 +1,86 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryLanguageTest {
+
+	private final QueryLanguage language = new QueryLanguage(new StandardAnalyzer(), 8, 10);
+
+	@Test
+	void syntaxesMatchTheSameDocuments() throws IOException {
+		try (Directory dir = new ByteBuffersDirectory()) {
+			try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new StandardAnalyzer()))) {
+				add(writer, "reports/q1.txt", "The annual report is late");
+				add(writer, "reports/q2.txt", "A report on the annual budget");
+				add(writer, "drafts/q3.txt", "Draft of the annual report");
+			}
+			try (DirectoryReader reader = DirectoryReader.open(dir)) {
+				IndexSearcher searcher = new IndexSearcher(reader);
+				assertEquals(3, count(searcher, "plain", "annual report"));
+				// plain words are escaped: quotes and operators are just text
+				assertEquals(3, count(searcher, "plain", "\"annual report\" -draft"));
+				assertEquals(1, count(searcher, "lucene", "\"annual report\" -path:drafts\\/*"));
+				assertEquals(1, count(searcher, "lucene", "budgte~1"));
+				assertEquals(2, count(searcher, "lucene", "+annual +path:reports\\/q?.txt"));
+				assertEquals(1, count(searcher, "json",
+						"{\"bool\":{\"must\":[{\"phrase\":\"annual report\"}],"
+								+ "\"must_not\":{\"prefix\":{\"field\":\"path\",\"value\":\"drafts/\"}}}}"));
+				assertEquals(2, count(searcher, "json", "{\"match\":{\"query\":\"draft budget\"}}"));
+				assertEquals(0, count(searcher, "json", "{\"match\":{\"query\":\"draft budget\",\"operator\":\"and\"}}"));
+				assertEquals(1, count(searcher, "json", "{\"term\":{\"field\":\"path\",\"value\":\"drafts/q3.txt\"}}"));
+				assertEquals(1, count(searcher, "json", "{\"fuzzy\":{\"value\":\"lat\",\"edits\":1}}"));
+			}
+		}
+	}
+
+	@Test
+	void costlyOrMalformedQueriesAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> language.parse("sql", "annual"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", " "));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", "\"annual report"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", "*port"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", "/rep.*/"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", "*:*"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", "owner:me"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("lucene", "a b c d e f g h i"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("json", "{\"match\":\"a\",\"term\":\"b\"}"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("json", "{\"regexp\":\"a.*\"}"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("json", "{\"fuzzy\":{\"value\":\"a\",\"edits\":3}}"));
+		assertThrows(IllegalArgumentException.class, () -> language.parse("json", "{\"bool\":{\"must\":"));
+		// the plain syntax escapes everything, so anything goes
+		assertDoesNotThrow(() -> language.parse("plain", "*port /rep.*/ owner:me"));
+	}
+
+	@Test
+	void expansionsAreCapped() {
+		FuzzyQuery fuzzy = assertInstanceOf(FuzzyQuery.class, language.parse("lucene", "report~2"));
+		assertEquals(2, fuzzy.getMaxEdits());
+		assertEquals("contents", fuzzy.getField());
+	}
+
+	private long count(IndexSearcher searcher, String syntax, String query) throws IOException {
+		return searcher.count(language.parse(syntax, query));
+	}
+
+	private static void add(IndexWriter writer, String path, String text) throws IOException {
+		Document doc = new Document();
+		DocumentManifest.addPath(doc, path);
+		doc.add(new TextField("contents", text, Field.Store.NO));
+		writer.addDocument(doc);
+	}
+}
@@ -0,0 +1,79 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilaritiesTest {
+
+	@Test
+	void parsesEverySpec() {
+		assertInstanceOf(ClassicSimilarity.class, Similarities.parse("classic"));
+		assertInstanceOf(LogTfSimilarity.class, Similarities.parse(" LogTF "));
+		BM25Similarity bm25 = (BM25Similarity) Similarities.parse("bm25(k1=2.0, b=0.3)");
+		assertEquals(2.0f, bm25.getK1());
+		assertEquals(0.3f, bm25.getB());
+		assertThrows(IllegalArgumentException.class, () -> Similarities.parse("dfr"));
+		assertThrows(IllegalArgumentException.class, () -> Similarities.parse("bm25(k1=-1,b=0.3)"));
+	}
+
+	@Test
+	void canonicalSpecsAreEqualForEqualFunctions() {
+		assertEquals("bm25(k1=1.2,b=0.75)", Similarities.canonical("BM25"));
+		assertEquals(Similarities.canonical("bm25(k1=1.2,b=0.75)"), Similarities.spec("bm25", null, null));
+		assertEquals("bm25(k1=1.2,b=0.5)", Similarities.spec("bm25", null, 0.5f));
+		assertThrows(IllegalArgumentException.class, () -> Similarities.spec("classic", 1.0f, null));
+	}
+
+	@Test
+	void logTfGrowsSlowerThanClassicForFrequentTerms() throws IOException {
+		try (Directory dir = new ByteBuffersDirectory()) {
+			try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+				writer.addDocument(doc("zebra other"));
+				writer.addDocument(doc("zebra ".repeat(64)));
+			}
+			try (DirectoryReader reader = DirectoryReader.open(dir)) {
+				// same length norm and idf, so the ratio differs only by tf(64): 1 + ln 64 ~ 5.2 against sqrt 64 = 8
+				float classic = ratio(reader, new ClassicSimilarity());
+				float logTf = ratio(reader, new LogTfSimilarity());
+				assertTrue(logTf < classic, "logtf " + logTf + " vs classic " + classic);
+				assertTrue(logTf > 0);
+			}
+		}
+	}
+
+	private static Document doc(String text) {
+		Document d = new Document();
+		d.add(new TextField("contents", text, Field.Store.NO));
+		return d;
+	}
+
+	// score of the repetitive document over the other one
+	private static float ratio(DirectoryReader reader, org.apache.lucene.search.similarities.Similarity similarity)
+			throws IOException {
+		IndexSearcher searcher = new IndexSearcher(reader);
+		searcher.setSimilarity(similarity);
+		TopDocs top = searcher.search(new TermQuery(new Term("contents", "zebra")), 2);
+		float[] scores = new float[2];
+		for (var sd : top.scoreDocs) {
+			scores[sd.doc] = sd.score;
+		}
+		return scores[1] / scores[0];
+	}
+}
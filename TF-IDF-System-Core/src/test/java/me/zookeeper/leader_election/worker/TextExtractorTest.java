@@ -0,0 +1,91 @@
+package me.zookeeper.leader_election.worker;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextExtractorTest {
+
+	@TempDir
+	Path dir;
+
+	private static String read(Reader reader) throws IOException {
+		try (reader) {
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[1024];
+			for (int n; (n = reader.read(buf)) >= 0; ) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		}
+	}
+
+	// writes "partial" and then never finishes, unless interrupted
+	private static final class HangingParser implements Parser {
+		@Override
+		public Set<MediaType> getSupportedTypes(ParseContext context) {
+			return Set.of(MediaType.OCTET_STREAM);
+		}
+
+		@Override
+		public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+				throws SAXException {
+			XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+			xhtml.startDocument();
+			xhtml.element("p", "partial");
+			try {
+				Thread.sleep(60_000);
+			} catch (InterruptedException e) {
+				throw new SAXException("interrupted");
+			}
+		}
+	}
+
+	@Test
+	void utf8TextIsStreamedUpToTheLimit() throws IOException {
+		Path file = Files.writeString(dir.resolve("a.txt"), "héllo wörld, and more");
+		try (TextExtractor extractor = new TextExtractor(1, 1, 1000, 11)) {
+			assertEquals("héllo wörld", read(extractor.open(file)));
+			assertEquals(1L, extractor.stats().get("truncated"));
+		}
+	}
+
+	@Test
+	void nonUtf8FilesGoThroughTika() throws IOException {
+		Path file = Files.write(dir.resolve("latin1.txt"), "café au lait".getBytes(StandardCharsets.ISO_8859_1));
+		try (TextExtractor extractor = new TextExtractor(1, 1, 5000, 0)) {
+			assertTrue(read(extractor.open(file)).contains("café au lait"));
+			assertEquals(1L, extractor.stats().get("parsed"));
+		}
+	}
+
+	@Test
+	void aHangingParseIsCutOffAndFreesItsThread() throws IOException {
+		Path file = Files.write(dir.resolve("blob.bin"), new byte[]{0, 1, 2, 3});
+		try (TextExtractor extractor = new TextExtractor(new HangingParser(), 1, 0, 200, 0)) {
+			long start = System.nanoTime();
+			assertEquals("partial", read(extractor.open(file)).trim());
+			// the only thread was interrupted and released, so the next parse gets it
+			assertEquals("partial", read(extractor.open(file)).trim());
+			assertTrue(System.nanoTime() - start < 2_000_000_000L);
+			assertEquals(2L, extractor.stats().get("timedOut"));
+			assertEquals(0L, extractor.stats().get("rejected"));
+		}
+	}
+}